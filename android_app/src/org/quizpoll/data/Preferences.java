@@ -18,10 +18,18 @@ package org.quizpoll.data;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.preference.PreferenceManager;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
- * Helper class for accessing key-value settings.
+ * Helper class for accessing key-value settings. Settings are read from
+ * in-memory snapshot, loaded on first access. Changes are visible
+ * immediately and written to disk later on background thread, several
+ * changes in a row are written together.
  */
 public class Preferences {
 
@@ -29,58 +37,139 @@ public class Preferences {
    * Types of preferences
    */
   public static enum PrefType {
-    AUTH_TOKEN_AE, AUTH_TOKEN_DOCS, USER_EMAIL, COOKIE_APPENGINE
+    AUTH_TOKEN_AE, AUTH_TOKEN_DOCS, USER_EMAIL, COOKIE_APPENGINE, COOKIE_APPENGINE_EXPIRY
   }
 
+  // How long changes wait for other changes before they are written
+  private static final long WRITE_DELAY = 500;
+
+  private static SharedPreferences settings;
+  private static Map<String, Object> snapshot;
+  // Changes not yet written, null value means removal
+  private static final Map<String, Object> pending = new HashMap<String, Object>();
+  private static Handler writer;
+
+  private static final Runnable write = new Runnable() {
+
+    @Override
+    public void run() {
+      Map<String, Object> changes;
+      synchronized (Preferences.class) {
+        if (pending.isEmpty()) {
+          return;
+        }
+        changes = new HashMap<String, Object>(pending);
+        pending.clear();
+      }
+      SharedPreferences.Editor editor = settings.edit();
+      for (Map.Entry<String, Object> change : changes.entrySet()) {
+        String key = change.getKey();
+        Object value = change.getValue();
+        if (value == null) {
+          editor.remove(key);
+        } else if (value instanceof Integer) {
+          editor.putInt(key, (Integer) value);
+        } else if (value instanceof Long) {
+          editor.putLong(key, (Long) value);
+        } else if (value instanceof Float) {
+          editor.putFloat(key, (Float) value);
+        } else if (value instanceof Boolean) {
+          editor.putBoolean(key, (Boolean) value);
+        } else {
+          editor.putString(key, (String) value);
+        }
+      }
+      editor.commit();
+    }
+  };
+
   public static void add(PrefType name, int value, Context context) {
-    SharedPreferences settings = PreferenceManager.getDefaultSharedPreferences(context);
-    SharedPreferences.Editor editor = settings.edit();
-    editor.putInt(name.toString(), value);
-    editor.commit();
+    put(name, value, context);
+  }
+
+  public static void add(PrefType name, long value, Context context) {
+    put(name, value, context);
   }
 
   public static void add(PrefType name, float value, Context context) {
-    SharedPreferences settings = PreferenceManager.getDefaultSharedPreferences(context);
-    SharedPreferences.Editor editor = settings.edit();
-    editor.putFloat(name.toString(), value);
-    editor.commit();
+    put(name, value, context);
   }
 
   public static void add(PrefType name, String value, Context context) {
-    SharedPreferences settings = PreferenceManager.getDefaultSharedPreferences(context);
-    SharedPreferences.Editor editor = settings.edit();
-    editor.putString(name.toString(), value);
-    editor.commit();
+    put(name, value, context);
   }
 
   public static void add(PrefType name, boolean value, Context context) {
-    SharedPreferences settings = PreferenceManager.getDefaultSharedPreferences(context);
-    SharedPreferences.Editor editor = settings.edit();
-    editor.putBoolean(name.toString(), value);
-    editor.commit();
+    put(name, value, context);
   }
 
   public static int getInt(PrefType name, Context context) {
-    SharedPreferences settings = PreferenceManager.getDefaultSharedPreferences(context);
-    return settings.getInt(name.toString(), 0);
+    Object value = get(name, context);
+    return value instanceof Integer ? (Integer) value : 0;
+  }
+
+  public static long getLong(PrefType name, Context context) {
+    Object value = get(name, context);
+    return value instanceof Long ? (Long) value : 0;
   }
 
   public static double getDouble(PrefType name, Context context) {
-    SharedPreferences settings = PreferenceManager.getDefaultSharedPreferences(context);
-    return settings.getFloat(name.toString(), 0f);
+    Object value = get(name, context);
+    return value instanceof Float ? (Float) value : 0f;
   }
 
   public static String getString(PrefType name, Context context) {
-    SharedPreferences settings = PreferenceManager.getDefaultSharedPreferences(context);
-    return settings.getString(name.toString(), null);
+    Object value = get(name, context);
+    return value instanceof String ? (String) value : null;
   }
 
   public static boolean getBoolean(PrefType name, Context context) {
-    SharedPreferences settings = PreferenceManager.getDefaultSharedPreferences(context);
-    return settings.getBoolean(name.toString(), false);
+    Object value = get(name, context);
+    return value instanceof Boolean ? (Boolean) value : false;
   }
 
   public static boolean hasString(PrefType name, Context context) {
     return (getString(name, context) != null);
   }
+
+  /**
+   * Starts writing of pending changes right away, should be called when the
+   * app goes to background. Doesn't block.
+   */
+  public static synchronized void flush() {
+    if (writer != null && !pending.isEmpty()) {
+      writer.removeCallbacks(write);
+      writer.post(write);
+    }
+  }
+
+  private static synchronized Object get(PrefType name, Context context) {
+    load(context);
+    return snapshot.get(name.toString());
+  }
+
+  private static synchronized void put(PrefType name, Object value, Context context) {
+    load(context);
+    snapshot.put(name.toString(), value);
+    pending.put(name.toString(), value);
+    writer.removeCallbacks(write);
+    writer.postDelayed(write, WRITE_DELAY);
+  }
+
+  /**
+   * Loads settings into memory on first access
+   */
+  private static void load(Context context) {
+    if (snapshot != null) {
+      return;
+    }
+    settings = PreferenceManager.getDefaultSharedPreferences(context.getApplicationContext());
+    snapshot = new HashMap<String, Object>(settings.getAll());
+    HandlerThread thread = new HandlerThread("Preferences");
+    thread.start();
+    writer = new Handler(thread.getLooper());
+  }
+
+  private Preferences() {
+  }
 }
@@ -33,10 +33,13 @@ import android.provider.BaseColumns;
 public class QuizPollProvider extends ContentProvider {
 
   private static final String DATABASE_NAME = "quizpoll.db";
-  private static final int DATABASE_VERSION = 1;
+  private static final int DATABASE_VERSION = 5;
 
   private static final String POLLS_TABLE_NAME = "polls";
   private static final String POLL_ITEM = "poll";
+  private static final String OUTBOX_TABLE_NAME = "outbox";
+  private static final String SHORT_URLS_TABLE_NAME = "short_urls";
+  private static final String QUIZZES_TABLE_NAME = "quizzes";
 
   public static final String AUTHORITY = "org.quizpoll";
 
@@ -84,12 +87,163 @@ public class QuizPollProvider extends ContentProvider {
 
   }
 
+  /**
+   * Helper class that defines the columns of pending submissions, which are
+   * retried until the server accepts them.
+   */
+  public static final class Outbox implements BaseColumns {
+
+    /**
+     * Content URI for the outbox, single item is addressed by appended _ID
+     */
+    public static final Uri CONTENT_URI = Uri.parse("content://"
+        + QuizPollProvider.AUTHORITY + "/" + OUTBOX_TABLE_NAME);
+
+    /**
+     * MIME type for the outbox
+     */
+    public static final String CONTENT_TYPE = "vnd.android.cursor.dir/org.quizpoll.outbox";
+
+    /**
+     * MIME type for a pending submission
+     */
+    public static final String CONTENT_ITEM_TYPE =
+        "vnd.android.cursor.item/org.quizpoll.submission";
+
+    /**
+     * Message type of AppEngineHelper
+     */
+    public static final String MESSAGE_TYPE = "message_type";
+
+    /**
+     * Unique key of the submission, server ignores repeated submissions
+     */
+    public static final String IDEMPOTENCY_KEY = "idempotency_key";
+
+    /**
+     * URL where the payload is posted
+     */
+    public static final String URL = "url";
+
+    /**
+     * JSON body of the request
+     */
+    public static final String PAYLOAD = "payload";
+
+    /**
+     * Number of failed attempts
+     */
+    public static final String ATTEMPTS = "attempts";
+
+    /**
+     * Timestamp of earliest next attempt
+     */
+    public static final String NEXT_ATTEMPT = "next_attempt";
+
+    /**
+     * Timestamp of creation, used for sorting
+     */
+    public static final String CREATED = "created";
+
+    /**
+     * Query parameter of CONTENT_URI limiting number of returned rows
+     */
+    public static final String LIMIT = "limit";
+
+  }
+
+  /**
+   * Helper class that defines the columns of shortened URLs, so sharing
+   * doesn't wait for URL shortener every time.
+   */
+  public static final class ShortUrls implements BaseColumns {
+
+    /**
+     * Content URI for shortened URLs
+     */
+    public static final Uri CONTENT_URI = Uri.parse("content://"
+        + QuizPollProvider.AUTHORITY + "/" + SHORT_URLS_TABLE_NAME);
+
+    /**
+     * MIME type for shortened URLs
+     */
+    public static final String CONTENT_TYPE = "vnd.android.cursor.dir/org.quizpoll.short_url";
+
+    /**
+     * Original URL, unique
+     */
+    public static final String LONG_URL = "long_url";
+
+    /**
+     * URL returned by URL shortener
+     */
+    public static final String SHORT_URL = "short_url";
+
+    /**
+     * Timestamp of creation
+     */
+    public static final String CREATED = "created";
+
+  }
+
+  /**
+   * Helper class that defines the columns of downloaded quizzes, so they can
+   * be shown before they are revalidated with the server.
+   */
+  public static final class Quizzes implements BaseColumns {
+
+    /**
+     * Content URI for stored quizzes
+     */
+    public static final Uri CONTENT_URI = Uri.parse("content://"
+        + QuizPollProvider.AUTHORITY + "/" + QUIZZES_TABLE_NAME);
+
+    /**
+     * MIME type for stored quizzes
+     */
+    public static final String CONTENT_TYPE = "vnd.android.cursor.dir/org.quizpoll.quiz";
+
+    /**
+     * Spreadsheet ID, unique and indexed
+     */
+    public static final String DOCUMENT_ID = "document_id";
+
+    /**
+     * Quiz in binary format of BinaryModelAdapters
+     */
+    public static final String CONTENT = "content";
+
+    /**
+     * Timestamp of last download or revalidation
+     */
+    public static final String FETCHED = "fetched";
+
+    /**
+     * ETag of the download, the quiz is revalidated with it
+     */
+    public static final String ETAG = "etag";
+
+    /**
+     * Stored quizzes over this limit are deleted, least recently fetched first
+     */
+    public static final int MAX_STORED = 50;
+
+  }
+
   // Codes for types of content that can be addressed
 
   // All polls
   private static final int LOOKUP_POLLS = 0;
   // Poll by document id
   private static final int LOOKUP_POLL_BY_DOCUMENT_ID = 1;
+  // All pending submissions
+  private static final int LOOKUP_OUTBOX = 2;
+  // Pending submission by id
+  private static final int LOOKUP_SUBMISSION_BY_ID = 3;
+  // All shortened URLs
+  private static final int LOOKUP_SHORT_URLS = 4;
+  // All stored quizzes
+  private static final int LOOKUP_QUIZZES = 5;
 
   // UriMatcher to recognize the URIs passed to this provider
   private static final UriMatcher sUriMatcher;
@@ -102,6 +256,18 @@ public class QuizPollProvider extends ContentProvider {
 
     // Catch content://.../poll/*
     sUriMatcher.addURI(AUTHORITY, POLL_ITEM + "/*", LOOKUP_POLL_BY_DOCUMENT_ID);
+
+    // Catch content://.../outbox
+    sUriMatcher.addURI(AUTHORITY, OUTBOX_TABLE_NAME, LOOKUP_OUTBOX);
+
+    // Catch content://.../outbox/#
+    sUriMatcher.addURI(AUTHORITY, OUTBOX_TABLE_NAME + "/#", LOOKUP_SUBMISSION_BY_ID);
+
+    // Catch content://.../short_urls
+    sUriMatcher.addURI(AUTHORITY, SHORT_URLS_TABLE_NAME, LOOKUP_SHORT_URLS);
+
+    // Catch content://.../quizzes
+    sUriMatcher.addURI(AUTHORITY, QUIZZES_TABLE_NAME, LOOKUP_QUIZZES);
   }
 
   /**
@@ -124,20 +290,64 @@ public class QuizPollProvider extends ContentProvider {
                          PollList.TITLE + " TEXT, " +
                          PollList.ACCESSSED + " BIGINT);";
       db.execSQL(sql);
+      createOutboxTable(db);
+      createShortUrlsTable(db);
+      createQuizzesTable(db);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+      // Keep recent polls, just add new tables
+      if (oldVersion < 2) {
+        createOutboxTable(db);
+      }
+      if (oldVersion < 3) {
+        createShortUrlsTable(db);
+      }
+      if (oldVersion < 4) {
+        createQuizzesTable(db);
+      } else if (oldVersion < 5) {
+        db.execSQL("ALTER TABLE " + QUIZZES_TABLE_NAME + " ADD COLUMN " + Quizzes.ETAG
+            + " TEXT;");
+      }
+    }
 
-      // Drop tables
-      db.execSQL("DROP TABLE IF EXISTS " + POLLS_TABLE_NAME);
+    private void createOutboxTable(SQLiteDatabase db) {
+      final String sql = "CREATE TABLE " + OUTBOX_TABLE_NAME + " (" +
+                         Outbox._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                         Outbox.MESSAGE_TYPE + " INTEGER, " +
+                         Outbox.IDEMPOTENCY_KEY + " TEXT UNIQUE, " +
+                         Outbox.URL + " TEXT, " +
+                         Outbox.PAYLOAD + " TEXT, " +
+                         Outbox.ATTEMPTS + " INTEGER DEFAULT 0, " +
+                         Outbox.NEXT_ATTEMPT + " BIGINT, " +
+                         Outbox.CREATED + " BIGINT);";
+      db.execSQL(sql);
+    }
+
+    private void createShortUrlsTable(SQLiteDatabase db) {
+      final String sql = "CREATE TABLE " + SHORT_URLS_TABLE_NAME + " (" +
+                         ShortUrls._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                         ShortUrls.LONG_URL + " TEXT UNIQUE, " +
+                         ShortUrls.SHORT_URL + " TEXT, " +
+                         ShortUrls.CREATED + " BIGINT);";
+      db.execSQL(sql);
+    }
 
-      // Recreate database
-      onCreate(db);
+    private void createQuizzesTable(SQLiteDatabase db) {
+      // Unique document id is indexed by SQLite
+      final String sql = "CREATE TABLE " + QUIZZES_TABLE_NAME + " (" +
+                         Quizzes._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                         Quizzes.DOCUMENT_ID + " TEXT UNIQUE, " +
+                         Quizzes.CONTENT + " BLOB, " +
+                         Quizzes.FETCHED + " BIGINT, " +
+                         Quizzes.ETAG + " TEXT);";
+      db.execSQL(sql);
     }
   }
 
-  // Instance of the DatabaseHelper providing access to the DB
+  // Instance of the DatabaseHelper providing access to the DB. The database is
+  // shared by all callers and stays open, closing it would break other threads.
   private DatabaseHelper mDbHelper;
 
   @Override
@@ -154,6 +364,14 @@ public class QuizPollProvider extends ContentProvider {
         return PollList.CONTENT_TYPE;
       case LOOKUP_POLL_BY_DOCUMENT_ID:
         return PollList.CONTENT_ITEM_TYPE;
+      case LOOKUP_OUTBOX:
+        return Outbox.CONTENT_TYPE;
+      case LOOKUP_SUBMISSION_BY_ID:
+        return Outbox.CONTENT_ITEM_TYPE;
+      case LOOKUP_SHORT_URLS:
+        return ShortUrls.CONTENT_TYPE;
+      case LOOKUP_QUIZZES:
+        return Quizzes.CONTENT_TYPE;
     }
     throw new IllegalArgumentException("Invalid URI:" + uri);
   }
@@ -161,21 +379,43 @@ public class QuizPollProvider extends ContentProvider {
   @Override
   public Uri insert(Uri uri, ContentValues initialValues) {
     SQLiteDatabase db = mDbHelper.getWritableDatabase();
-    try {
-      switch (sUriMatcher.match(uri)) {
-        case LOOKUP_POLLS:
-          initialValues.put(PollList.ACCESSSED, System.currentTimeMillis());
-          long taskId = db.insert(POLLS_TABLE_NAME, null, initialValues);
-          return ContentUris.withAppendedId(PollList.CONTENT_URI, taskId);
-      }
-      throw new IllegalArgumentException("Invalid URI:" + uri);
-    } finally {
-      db.close();
+    switch (sUriMatcher.match(uri)) {
+      case LOOKUP_POLLS:
+        initialValues.put(PollList.ACCESSSED, System.currentTimeMillis());
+        long taskId = db.insert(POLLS_TABLE_NAME, null, initialValues);
+        return ContentUris.withAppendedId(PollList.CONTENT_URI, taskId);
+      case LOOKUP_OUTBOX:
+        initialValues.put(Outbox.CREATED, System.currentTimeMillis());
+        long submissionId = db.insert(OUTBOX_TABLE_NAME, null, initialValues);
+        return ContentUris.withAppendedId(Outbox.CONTENT_URI, submissionId);
+      case LOOKUP_SHORT_URLS:
+        initialValues.put(ShortUrls.CREATED, System.currentTimeMillis());
+        long urlId =
+            db.insertWithOnConflict(SHORT_URLS_TABLE_NAME, null, initialValues,
+                SQLiteDatabase.CONFLICT_REPLACE);
+        return ContentUris.withAppendedId(ShortUrls.CONTENT_URI, urlId);
+      case LOOKUP_QUIZZES:
+        initialValues.put(Quizzes.FETCHED, System.currentTimeMillis());
+        long quizId =
+            db.insertWithOnConflict(QUIZZES_TABLE_NAME, null, initialValues,
+                SQLiteDatabase.CONFLICT_REPLACE);
+        db.delete(QUIZZES_TABLE_NAME, Quizzes._ID + " NOT IN (SELECT " + Quizzes._ID
+            + " FROM " + QUIZZES_TABLE_NAME + " ORDER BY " + Quizzes.FETCHED + " DESC, "
+            + Quizzes._ID + " DESC LIMIT " + Quizzes.MAX_STORED + ")", null);
+        return ContentUris.withAppendedId(Quizzes.CONTENT_URI, quizId);
     }
+    throw new IllegalArgumentException("Invalid URI:" + uri);
   }
 
   @Override
   public int delete(Uri uri, String where, String[] whereArgs) {
+    SQLiteDatabase db = mDbHelper.getWritableDatabase();
+    switch (sUriMatcher.match(uri)) {
+      case LOOKUP_SUBMISSION_BY_ID:
+        return db.delete(OUTBOX_TABLE_NAME, Outbox._ID + " = ?", new String[] {
+          uri.getLastPathSegment()
+        });
+    }
     throw new UnsupportedOperationException("Delete not supported");
   }
 
@@ -187,28 +427,38 @@ public class QuizPollProvider extends ContentProvider {
       case LOOKUP_POLLS:
         return db.query(POLLS_TABLE_NAME, projection, selection, selectionArgs, null, null,
             PollList.ACCESSSED + " DESC");
+      case LOOKUP_OUTBOX:
+        return db.query(OUTBOX_TABLE_NAME, projection, selection, selectionArgs, null, null,
+            sortOrder != null ? sortOrder : Outbox.CREATED + " ASC",
+            uri.getQueryParameter(Outbox.LIMIT));
+      case LOOKUP_SHORT_URLS:
+        return db.query(SHORT_URLS_TABLE_NAME, projection, selection, selectionArgs, null, null,
+            sortOrder);
+      case LOOKUP_QUIZZES:
+        return db.query(QUIZZES_TABLE_NAME, projection, selection, selectionArgs, null, null,
+            sortOrder);
     }
-    db.close(); // In matched case, cursor.close() is closing connection
-                // automatically
     throw new IllegalArgumentException("Invalid URI:" + uri);
   }
 
   @Override
   public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
     SQLiteDatabase db = mDbHelper.getWritableDatabase();
-    try {
-      if (values == null) {
-        values = new ContentValues();
-      }
-      switch (sUriMatcher.match(uri)) {
-        case LOOKUP_POLL_BY_DOCUMENT_ID:
-          values.put(PollList.ACCESSSED, System.currentTimeMillis());
-          return db.update(POLLS_TABLE_NAME, values,
-              PollList.DOCUMENT_ID + " = '" + uri.getLastPathSegment() + "'", selectionArgs);
-      }
-      throw new IllegalArgumentException("Invalid URI:" + uri + sUriMatcher.match(uri));
-    } finally {
-      db.close();
+    if (values == null) {
+      values = new ContentValues();
+    }
+    switch (sUriMatcher.match(uri)) {
+      case LOOKUP_POLL_BY_DOCUMENT_ID:
+        values.put(PollList.ACCESSSED, System.currentTimeMillis());
+        return db.update(POLLS_TABLE_NAME, values,
+            PollList.DOCUMENT_ID + " = '" + uri.getLastPathSegment() + "'", selectionArgs);
+      case LOOKUP_SUBMISSION_BY_ID:
+        return db.update(OUTBOX_TABLE_NAME, values, Outbox._ID + " = ?", new String[] {
+          uri.getLastPathSegment()
+        });
+      case LOOKUP_QUIZZES:
+        return db.update(QUIZZES_TABLE_NAME, values, selection, selectionArgs);
     }
+    throw new IllegalArgumentException("Invalid URI:" + uri + sUriMatcher.match(uri));
   }
 }
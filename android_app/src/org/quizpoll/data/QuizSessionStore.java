@@ -0,0 +1,138 @@
+/*
+ Copyright 2011 Google Inc. All Rights Reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License');
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS-IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+
+package org.quizpoll.data;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import org.quizpoll.data.model.Quiz;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Quizzes shared by activities of one game, activities pass just the document
+ * id instead of the whole quiz in Intent. Recently used quizzes are kept in
+ * memory, others are read from {@link QuizStore}, so they survive death of
+ * the process.
+ */
+public class QuizSessionStore {
+
+  // Quizzes kept in memory
+  private static final int MAX_MEMORY_QUIZZES = 4;
+
+  private static QuizSessionStore instance;
+
+  private final Context context;
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  // Database reads have their own thread, so they never wait for network
+  // requests or take their workers
+  private final Executor loader = Executors.newSingleThreadExecutor();
+  // Access-ordered, so the least recently used quiz is evicted first
+  private final Map<String, Quiz> quizzes =
+      new LinkedHashMap<String, Quiz>(MAX_MEMORY_QUIZZES, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Quiz> eldest) {
+          return size() > MAX_MEMORY_QUIZZES;
+        }
+      };
+
+  /**
+   * Receives quiz loaded in background on UI thread
+   */
+  public interface Callback {
+    public void onLoaded(Quiz quiz);
+  }
+
+  private QuizSessionStore(Context context) {
+    this.context = context;
+  }
+
+  /**
+   * Returns shared store, creates it on first use
+   */
+  public static synchronized QuizSessionStore get(Context context) {
+    if (instance == null) {
+      instance = new QuizSessionStore(context.getApplicationContext());
+    }
+    return instance;
+  }
+
+  /**
+   * Keeps the quiz in memory under its document id, replaces previous one.
+   * Quizzes are persisted by {@link QuizStore} when they are downloaded.
+   */
+  public synchronized void put(Quiz quiz) {
+    quizzes.put(quiz.getDocumentId(), quiz);
+  }
+
+  /**
+   * Finds the quiz in memory only, null if it isn't there. Can be called on
+   * UI thread.
+   */
+  public synchronized Quiz getCached(String documentId) {
+    return quizzes.get(documentId);
+  }
+
+  /**
+   * Finds the quiz in memory or in persistent store, null if it was never
+   * downloaded. Reads database, so it must not be called on UI thread.
+   */
+  public Quiz get(String documentId) {
+    Quiz quiz = getCached(documentId);
+    if (quiz != null) {
+      return quiz;
+    }
+    quiz = QuizStore.get(documentId, context);
+    if (quiz != null) {
+      put(quiz);
+    }
+    return quiz;
+  }
+
+  /**
+   * Finds the quiz like {@link #get(String)}, persistent store is read on
+   * background thread. Must be called on UI thread, callback gets null if
+   * the quiz was never downloaded.
+   */
+  public void load(final String documentId, final Callback callback) {
+    Quiz quiz = getCached(documentId);
+    if (quiz != null) {
+      callback.onLoaded(quiz);
+      return;
+    }
+    loader.execute(new Runnable() {
+
+      @Override
+      public void run() {
+        final Quiz storedQuiz = get(documentId);
+        handler.post(new Runnable() {
+
+          @Override
+          public void run() {
+            callback.onLoaded(storedQuiz);
+          }
+        });
+      }
+    });
+  }
+}
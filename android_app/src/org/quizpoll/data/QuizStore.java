@@ -0,0 +1,125 @@
+/*
+ Copyright 2011 Google Inc. All Rights Reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License');
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS-IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+
+package org.quizpoll.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import org.quizpoll.data.QuizPollProvider.Quizzes;
+import org.quizpoll.data.model.Quiz;
+import org.quizpoll.net.BinaryModelAdapters;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Helper class for persistent storage of downloaded quizzes. Quizzes are
+ * stored in binary format together with ETag of their download, which
+ * revalidates them. Binary format is also their canonical form, so changed
+ * content is recognized by comparing bytes when the server doesn't send ETag.
+ */
+public class QuizStore {
+
+  private static final String TAG = "QuizStore";
+
+  /**
+   * Returns stored quiz or null if it wasn't downloaded yet
+   */
+  public static Quiz get(String documentId, Context context) {
+    byte[] content = getContent(documentId, context);
+    if (content == null) {
+      return null;
+    }
+    try {
+      return BinaryModelAdapters.QUIZ.fromBinary(new ByteArrayInputStream(content));
+    } catch (IOException e) {
+      Log.w(TAG, "Corrupted quiz " + documentId);
+      return null;
+    }
+  }
+
+  /**
+   * Returns ETag of the stored quiz, null if there is none
+   */
+  public static String getEtag(String documentId, Context context) {
+    Cursor cursor = query(documentId, Quizzes.ETAG, context);
+    if (cursor == null) {
+      return null;
+    }
+    try {
+      return cursor.moveToFirst() ? cursor.getString(0) : null;
+    } finally {
+      cursor.close();
+    }
+  }
+
+  /**
+   * Stores downloaded quiz with its ETag, replaces previous one. Returns false
+   * if the stored quiz had the same content, then just its download time and
+   * ETag are updated.
+   */
+  public static boolean put(Quiz quiz, String etag, Context context) {
+    byte[] content = BinaryModelAdapters.QUIZ.toBinary(quiz);
+    ContentValues values = new ContentValues();
+    values.put(Quizzes.ETAG, etag);
+    if (Arrays.equals(content, getContent(quiz.getDocumentId(), context))) {
+      touch(quiz.getDocumentId(), values, context);
+      return false;
+    }
+    values.put(Quizzes.DOCUMENT_ID, quiz.getDocumentId());
+    values.put(Quizzes.CONTENT, content);
+    context.getContentResolver().insert(Quizzes.CONTENT_URI, values);
+    return true;
+  }
+
+  /**
+   * Updates download time of the quiz revalidated by the server
+   */
+  public static void touch(String documentId, Context context) {
+    touch(documentId, new ContentValues(), context);
+  }
+
+  private static void touch(String documentId, ContentValues values, Context context) {
+    values.put(Quizzes.FETCHED, System.currentTimeMillis());
+    context.getContentResolver().update(Quizzes.CONTENT_URI, values,
+        Quizzes.DOCUMENT_ID + " = ?", new String[] {documentId});
+  }
+
+  private static byte[] getContent(String documentId, Context context) {
+    Cursor cursor = query(documentId, Quizzes.CONTENT, context);
+    if (cursor == null) {
+      return null;
+    }
+    try {
+      return cursor.moveToFirst() ? cursor.getBlob(0) : null;
+    } finally {
+      cursor.close();
+    }
+  }
+
+  private static Cursor query(String documentId, String column, Context context) {
+    return context.getContentResolver().query(Quizzes.CONTENT_URI, new String[] {column},
+        Quizzes.DOCUMENT_ID + " = ?", new String[] {documentId}, null);
+  }
+
+  private QuizStore() {
+  }
+}
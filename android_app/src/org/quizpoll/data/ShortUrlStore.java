@@ -0,0 +1,59 @@
+/*
+ Copyright 2011 Google Inc. All Rights Reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License');
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS-IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.quizpoll.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+
+import org.quizpoll.data.QuizPollProvider.ShortUrls;
+
+/**
+ * Helper class for persistent mapping of long URLs to shortened ones.
+ */
+public class ShortUrlStore {
+
+  /**
+   * Returns shortened URL or null if the URL wasn't shortened yet
+   */
+  public static String get(String longUrl, Context context) {
+    Cursor cursor = context.getContentResolver().query(ShortUrls.CONTENT_URI, new String[] {
+      ShortUrls.SHORT_URL
+    }, ShortUrls.LONG_URL + " = ?", new String[] {longUrl}, null);
+    if (cursor == null) {
+      return null;
+    }
+    try {
+      return cursor.moveToFirst() ? cursor.getString(0) : null;
+    } finally {
+      cursor.close();
+    }
+  }
+
+  /**
+   * Stores shortened URL, replaces previous one
+   */
+  public static void add(String longUrl, String shortUrl, Context context) {
+    ContentValues values = new ContentValues();
+    values.put(ShortUrls.LONG_URL, longUrl);
+    values.put(ShortUrls.SHORT_URL, shortUrl);
+    context.getContentResolver().insert(ShortUrls.CONTENT_URI, values);
+  }
+
+  private ShortUrlStore() {
+  }
+}
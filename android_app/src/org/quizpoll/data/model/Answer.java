@@ -16,16 +16,16 @@
 
 package org.quizpoll.data.model;
 
-import java.io.Serializable;
+import android.os.Parcel;
+import android.os.Parcelable;
 
 /**
  * Data model for answer for the question
  */
-public class Answer implements Serializable, Comparable<Answer> {
+public class Answer implements Parcelable, Comparable<Answer> {
   private final String answerText;
   private final boolean correct;
   private final int number;
-  private boolean answered;
 
   public Answer(String answerText, boolean correct, int number) {
     this.answerText = answerText;
@@ -33,6 +33,12 @@ public class Answer implements Serializable, Comparable<Answer> {
     this.number = number;
   }
 
+  private Answer(Parcel in) {
+    answerText = in.readString();
+    correct = in.readInt() != 0;
+    number = in.readInt();
+  }
+
   public String getAnswerText() {
     return answerText;
   }
@@ -45,16 +51,33 @@ public class Answer implements Serializable, Comparable<Answer> {
     return number;
   }
 
-  public boolean isAnswered() {
-    return answered;
+  @Override
+  public int compareTo(Answer another) {
+    return this.number - another.number;
   }
 
-  public void setAnswered(boolean answered) {
-    this.answered = answered;
+  @Override
+  public void writeToParcel(Parcel dest, int flags) {
+    dest.writeString(answerText);
+    dest.writeInt(correct ? 1 : 0);
+    dest.writeInt(number);
   }
 
   @Override
-  public int compareTo(Answer another) {
-    return this.number - another.number;
+  public int describeContents() {
+    return 0;
   }
+
+  public static final Parcelable.Creator<Answer> CREATOR = new Parcelable.Creator<Answer>() {
+
+    @Override
+    public Answer createFromParcel(Parcel in) {
+      return new Answer(in);
+    }
+
+    @Override
+    public Answer[] newArray(int size) {
+      return new Answer[size];
+    }
+  };
 }
@@ -0,0 +1,101 @@
+/*
+ Copyright 2011 Google Inc. All Rights Reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License');
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS-IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.quizpoll.data.model;
+
+import android.util.SparseBooleanArray;
+
+import org.quizpoll.data.model.Question.QuestionType;
+
+import java.util.List;
+
+/**
+ * Compiled answer key of a question. Correct answers are stored as bitmask of
+ * answer numbers, so grading is a single comparison and shuffling of answers
+ * doesn't change the key. It is computed once when the question is parsed and
+ * never changes.
+ */
+public final class AnswerKey {
+
+  /**
+   * Highest number of answers of one question
+   */
+  public static final int MAX_ANSWERS = 64;
+
+  private final long correctMask;
+  private final QuestionType type;
+  private final int answerCount;
+
+  public AnswerKey(List<Answer> answers) {
+    long mask = 0;
+    int correctAnswers = 0;
+    for (Answer answer : answers) {
+      if (answer.isCorrect()) {
+        mask |= bit(answer.getNumber());
+        correctAnswers++;
+      }
+    }
+    this.correctMask = mask;
+    this.type = correctAnswers == 1 ? QuestionType.SINGLE_CHOICE : QuestionType.MULTIPLE_CHOICE;
+    this.answerCount = answers.size();
+  }
+
+  /**
+   * Bit of the answer number in selection masks
+   */
+  public static long bit(int answerNumber) {
+    if (answerNumber < 0 || answerNumber >= MAX_ANSWERS) {
+      throw new IllegalArgumentException("Unsupported answer number: " + answerNumber);
+    }
+    return 1L << answerNumber;
+  }
+
+  /**
+   * Converts checked positions of displayed answers into selection mask
+   */
+  public static long select(List<Answer> displayedAnswers, SparseBooleanArray checkedPositions) {
+    long selection = 0;
+    for (int i = 0; i < displayedAnswers.size(); i++) {
+      if (checkedPositions.get(i)) {
+        selection |= bit(displayedAnswers.get(i).getNumber());
+      }
+    }
+    return selection;
+  }
+
+  public static boolean isSelected(long selection, int answerNumber) {
+    return (selection & bit(answerNumber)) != 0;
+  }
+
+  public boolean isCorrect(long selection) {
+    return selection == correctMask;
+  }
+
+  public long getCorrectMask() {
+    return correctMask;
+  }
+
+  /**
+   * Single choice if exactly one answer is correct
+   */
+  public QuestionType getType() {
+    return type;
+  }
+
+  public int getAnswerCount() {
+    return answerCount;
+  }
+}
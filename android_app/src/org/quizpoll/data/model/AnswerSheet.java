@@ -0,0 +1,97 @@
+/*
+ Copyright 2011 Google Inc. All Rights Reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License');
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS-IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.quizpoll.data.model;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * Answers chosen by the user during one quiz game or poll, kept apart from the
+ * shared question models. Questions are indexed by their position in the
+ * game, selections are bitmasks of answer numbers (see {@link AnswerKey}).
+ */
+public class AnswerSheet implements Parcelable {
+
+  private final long[] selections;
+  private final boolean[] answered;
+  private final boolean[] correct;
+
+  public AnswerSheet(int questionCount) {
+    selections = new long[questionCount];
+    answered = new boolean[questionCount];
+    correct = new boolean[questionCount];
+  }
+
+  private AnswerSheet(Parcel in) {
+    selections = in.createLongArray();
+    answered = in.createBooleanArray();
+    correct = in.createBooleanArray();
+  }
+
+  /**
+   * Records answer to the question and grades it, returns whether it is
+   * correct
+   */
+  public boolean record(int questionIndex, AnswerKey key, long selection) {
+    selections[questionIndex] = selection;
+    answered[questionIndex] = true;
+    correct[questionIndex] = key.isCorrect(selection);
+    return correct[questionIndex];
+  }
+
+  public long getSelection(int questionIndex) {
+    return selections[questionIndex];
+  }
+
+  public boolean isAnswered(int questionIndex) {
+    return answered[questionIndex];
+  }
+
+  public boolean isCorrect(int questionIndex) {
+    return correct[questionIndex];
+  }
+
+  public int size() {
+    return selections.length;
+  }
+
+  @Override
+  public void writeToParcel(Parcel dest, int flags) {
+    dest.writeLongArray(selections);
+    dest.writeBooleanArray(answered);
+    dest.writeBooleanArray(correct);
+  }
+
+  @Override
+  public int describeContents() {
+    return 0;
+  }
+
+  public static final Parcelable.Creator<AnswerSheet> CREATOR =
+      new Parcelable.Creator<AnswerSheet>() {
+
+        @Override
+        public AnswerSheet createFromParcel(Parcel in) {
+          return new AnswerSheet(in);
+        }
+
+        @Override
+        public AnswerSheet[] newArray(int size) {
+          return new AnswerSheet[size];
+        }
+      };
+}
@@ -16,13 +16,14 @@
 
 package org.quizpoll.data.model;
 
-import java.io.Serializable;
+import android.os.Parcel;
+import android.os.Parcelable;
 
 /**
  * Data model for quizzes from Google Docs List API. It's used both for
  * collections and spreadsheets (quizzes)
  */
-public class DocsEntry implements Serializable, Comparable<DocsEntry> {
+public class DocsEntry implements Parcelable, Comparable<DocsEntry> {
   /**
    * Type of doc entry
    */
@@ -39,6 +40,12 @@ public class DocsEntry implements Serializable, Comparable<DocsEntry> {
     this.id = id;
   }
 
+  private DocsEntry(Parcel in) {
+    type = in.readInt();
+    title = in.readString();
+    id = in.readString();
+  }
+
   public int getType() {
     return type;
   }
@@ -62,4 +69,29 @@ public class DocsEntry implements Serializable, Comparable<DocsEntry> {
       return -1;
     }
   }
+
+  @Override
+  public void writeToParcel(Parcel dest, int flags) {
+    dest.writeInt(type);
+    dest.writeString(title);
+    dest.writeString(id);
+  }
+
+  @Override
+  public int describeContents() {
+    return 0;
+  }
+
+  public static final Parcelable.Creator<DocsEntry> CREATOR = new Parcelable.Creator<DocsEntry>() {
+
+    @Override
+    public DocsEntry createFromParcel(Parcel in) {
+      return new DocsEntry(in);
+    }
+
+    @Override
+    public DocsEntry[] newArray(int size) {
+      return new DocsEntry[size];
+    }
+  };
 }
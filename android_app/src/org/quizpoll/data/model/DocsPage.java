@@ -0,0 +1,45 @@
+/*
+ Copyright 2011 Google Inc. All Rights Reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License');
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS-IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.quizpoll.data.model;
+
+import java.util.List;
+
+/**
+ * One page of document list from Google Docs List API together with link to
+ * the next page
+ */
+public class DocsPage {
+
+  private final List<DocsEntry> entries;
+  private final String nextPageUrl;
+
+  public DocsPage(List<DocsEntry> entries, String nextPageUrl) {
+    this.entries = entries;
+    this.nextPageUrl = nextPageUrl;
+  }
+
+  public List<DocsEntry> getEntries() {
+    return entries;
+  }
+
+  /**
+   * URL of the next page, null for the last page
+   */
+  public String getNextPageUrl() {
+    return nextPageUrl;
+  }
+}
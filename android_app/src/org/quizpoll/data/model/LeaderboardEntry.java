@@ -16,12 +16,13 @@
 
 package org.quizpoll.data.model;
 
-import java.io.Serializable;
+import android.os.Parcel;
+import android.os.Parcelable;
 
 /**
  * Data model for leaderboard entry from spreadsheet.
  */
-public class LeaderboardEntry implements Serializable, Comparable<LeaderboardEntry> {
+public class LeaderboardEntry implements Parcelable, Comparable<LeaderboardEntry> {
   private int score;
   private final String ldap;
 
@@ -30,6 +31,11 @@ public class LeaderboardEntry implements Serializable, Comparable<LeaderboardEnt
     this.ldap = ldap;
   }
 
+  private LeaderboardEntry(Parcel in) {
+    score = in.readInt();
+    ldap = in.readString();
+  }
+
   public int getScore() {
     return score;
   }
@@ -47,4 +53,28 @@ public class LeaderboardEntry implements Serializable, Comparable<LeaderboardEnt
     return another.score - this.score;
   }
 
+  @Override
+  public void writeToParcel(Parcel dest, int flags) {
+    dest.writeInt(score);
+    dest.writeString(ldap);
+  }
+
+  @Override
+  public int describeContents() {
+    return 0;
+  }
+
+  public static final Parcelable.Creator<LeaderboardEntry> CREATOR =
+      new Parcelable.Creator<LeaderboardEntry>() {
+
+        @Override
+        public LeaderboardEntry createFromParcel(Parcel in) {
+          return new LeaderboardEntry(in);
+        }
+
+        @Override
+        public LeaderboardEntry[] newArray(int size) {
+          return new LeaderboardEntry[size];
+        }
+      };
 }
@@ -16,16 +16,18 @@
 
 package org.quizpoll.data.model;
 
+import android.os.Parcel;
+import android.os.Parcelable;
+
 import org.quizpoll.util.Utils;
 
-import java.io.Serializable;
 import java.util.Collections;
 import java.util.List;
 
 /**
  * Data model for polling session. Contains questions and metadata.
  */
-public class Poll implements Serializable {
+public class Poll implements Parcelable {
 
   // Special values for currentQuestion
   public static final int WAITING_FOR_INSTRUCTOR = -1;
@@ -38,6 +40,8 @@ public class Poll implements Serializable {
   private final String documentId;
   private final List<Question> questions;
   private int currentQuestion;
+  // Version (ETag) of the status currentQuestion comes from
+  private String statusVersion;
 
   public Poll(String title, List<Question> questions, String internalDataWorksheet,
       String responsesWorksheet, String spreadsheetId) {
@@ -49,6 +53,16 @@ public class Poll implements Serializable {
     this.currentQuestion = UNKNOWN;
   }
 
+  private Poll(Parcel in) {
+    title = in.readString();
+    internalDataSheet = in.readString();
+    responsesSheet = in.readString();
+    documentId = in.readString();
+    questions = in.createTypedArrayList(Question.CREATOR);
+    currentQuestion = in.readInt();
+    statusVersion = in.readString();
+  }
+
   public String getTitle() {
     return Utils.formatPollingName(title);
   }
@@ -75,5 +89,46 @@ public class Poll implements Serializable {
 
   public void setCurrentQuestion(int currentQuestion) {
     this.currentQuestion = currentQuestion;
+    if (currentQuestion == UNKNOWN) {
+      // Status must be downloaded again
+      statusVersion = null;
+    }
+  }
+
+  public String getStatusVersion() {
+    return statusVersion;
+  }
+
+  public void setStatusVersion(String statusVersion) {
+    this.statusVersion = statusVersion;
   }
+
+  @Override
+  public void writeToParcel(Parcel dest, int flags) {
+    dest.writeString(title);
+    dest.writeString(internalDataSheet);
+    dest.writeString(responsesSheet);
+    dest.writeString(documentId);
+    dest.writeTypedList(questions);
+    dest.writeInt(currentQuestion);
+    dest.writeString(statusVersion);
+  }
+
+  @Override
+  public int describeContents() {
+    return 0;
+  }
+
+  public static final Parcelable.Creator<Poll> CREATOR = new Parcelable.Creator<Poll>() {
+
+    @Override
+    public Poll createFromParcel(Parcel in) {
+      return new Poll(in);
+    }
+
+    @Override
+    public Poll[] newArray(int size) {
+      return new Poll[size];
+    }
+  };
 }
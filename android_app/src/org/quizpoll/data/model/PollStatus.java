@@ -0,0 +1,39 @@
+/*
+ Copyright 2011 Google Inc. All Rights Reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License');
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS-IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.quizpoll.data.model;
+
+/**
+ * Status of polling session received from the server, current question
+ * together with version of the status
+ */
+public class PollStatus {
+  private final int currentQuestion;
+  private final String version;
+
+  public PollStatus(int currentQuestion, String version) {
+    this.currentQuestion = currentQuestion;
+    this.version = version;
+  }
+
+  public int getCurrentQuestion() {
+    return currentQuestion;
+  }
+
+  public String getVersion() {
+    return version;
+  }
+}
@@ -16,17 +16,20 @@
 
 package org.quizpoll.data.model;
 
-import java.io.Serializable;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Data model for question in the quiz
  */
-public class Question implements Serializable {
+public class Question implements Parcelable {
   private final String questionText;
   private final List<Answer> answers;
   private final int number;
-  private boolean success;
+  private final AnswerKey answerKey;
   private boolean anonymous; // Just for polling
 
   /**
@@ -41,44 +44,54 @@ public class Question implements Serializable {
   }
 
   public List<Answer> getAnswers() {
-    // Can be modified, because I perform randomizing answers later
+    // Can be modified, game randomizes answers of its own copy
     return answers;
   }
 
   /**
-   * Determines question type based on number of correct answers
+   * Question type based on number of correct answers
    */
   public QuestionType getType() {
-    int correctAnswers = 0;
-    for (Answer answer : answers) {
-      if (answer.isCorrect()) {
-        correctAnswers++;
-      }
-    }
-    if (correctAnswers == 1) {
-      return QuestionType.SINGLE_CHOICE;
-    } else {
-      return QuestionType.MULTIPLE_CHOICE;
-    }
+    return answerKey.getType();
+  }
+
+  /**
+   * Correct answers, computed when the question is created
+   */
+  public AnswerKey getAnswerKey() {
+    return answerKey;
   }
 
   public Question(String questionText, List<Answer> answers, int number) {
     this.questionText = questionText;
     this.answers = answers;
     this.number = number;
+    this.answerKey = new AnswerKey(answers != null ? answers : new ArrayList<Answer>());
     this.anonymous = false;
   }
 
-  public int getNumber() {
-    return number;
+  /**
+   * Copy with its own list of answers, answer key is shared as it doesn't
+   * depend on the order
+   */
+  public Question(Question question) {
+    this.questionText = question.questionText;
+    this.answers = question.answers != null ? new ArrayList<Answer>(question.answers) : null;
+    this.number = question.number;
+    this.answerKey = question.answerKey;
+    this.anonymous = question.anonymous;
   }
 
-  public boolean isSuccess() {
-    return success;
+  /**
+   * Answer key is not parceled, it is computed again from the answers
+   */
+  private Question(Parcel in) {
+    this(in.readString(), in.createTypedArrayList(Answer.CREATOR), in.readInt());
+    anonymous = in.readInt() != 0;
   }
 
-  public void setSuccess(boolean success) {
-    this.success = success;
+  public int getNumber() {
+    return number;
   }
 
   public boolean isAnonymous() {
@@ -89,4 +102,29 @@ public class Question implements Serializable {
     this.anonymous = anonymous;
   }
 
+  @Override
+  public void writeToParcel(Parcel dest, int flags) {
+    dest.writeString(questionText);
+    dest.writeTypedList(answers);
+    dest.writeInt(number);
+    dest.writeInt(anonymous ? 1 : 0);
+  }
+
+  @Override
+  public int describeContents() {
+    return 0;
+  }
+
+  public static final Parcelable.Creator<Question> CREATOR = new Parcelable.Creator<Question>() {
+
+    @Override
+    public Question createFromParcel(Parcel in) {
+      return new Question(in);
+    }
+
+    @Override
+    public Question[] newArray(int size) {
+      return new Question[size];
+    }
+  };
 }
@@ -16,13 +16,16 @@
 
 package org.quizpoll.data.model;
 
-import java.io.Serializable;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Data model for individual quiz. Contains questions and metadata.
  */
-public class Quiz implements Serializable {
+public class Quiz implements Parcelable {
   private final String title;
   private final String description;
   private final String image;
@@ -45,6 +48,37 @@ public class Quiz implements Serializable {
     this.statisticsSheet = statisticsSheet;
   }
 
+  /**
+   * Copy for one game, with its own list of questions which can be filtered
+   * and shuffled. Questions are copied too, so their answers can be shuffled.
+   */
+  public Quiz(Quiz quiz) {
+    this(quiz.title, quiz.description, quiz.image, copyQuestions(quiz.questions),
+        quiz.leaderboardSheet, quiz.documentId, quiz.statisticsSheet);
+  }
+
+  private static List<Question> copyQuestions(List<Question> questions) {
+    if (questions == null) {
+      return null;
+    }
+    List<Question> copy = new ArrayList<Question>(questions.size());
+    for (Question question : questions) {
+      copy.add(new Question(question));
+    }
+    return copy;
+  }
+
+  private Quiz(Parcel in) {
+    title = in.readString();
+    description = in.readString();
+    image = in.readString();
+    leaderboardSheet = in.readString();
+    statisticsSheet = in.readString();
+    documentId = in.readString();
+    score = in.readInt();
+    questions = in.createTypedArrayList(Question.CREATOR);
+  }
+
   public String getTitle() {
     return title;
   }
@@ -87,4 +121,33 @@ public class Quiz implements Serializable {
     return statisticsSheet;
   }
 
+  @Override
+  public void writeToParcel(Parcel dest, int flags) {
+    dest.writeString(title);
+    dest.writeString(description);
+    dest.writeString(image);
+    dest.writeString(leaderboardSheet);
+    dest.writeString(statisticsSheet);
+    dest.writeString(documentId);
+    dest.writeInt(score);
+    dest.writeTypedList(questions);
+  }
+
+  @Override
+  public int describeContents() {
+    return 0;
+  }
+
+  public static final Parcelable.Creator<Quiz> CREATOR = new Parcelable.Creator<Quiz>() {
+
+    @Override
+    public Quiz createFromParcel(Parcel in) {
+      return new Quiz(in);
+    }
+
+    @Override
+    public Quiz[] newArray(int size) {
+      return new Quiz[size];
+    }
+  };
 }
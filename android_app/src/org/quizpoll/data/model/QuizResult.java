@@ -0,0 +1,42 @@
+/*
+ Copyright 2011 Google Inc. All Rights Reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License');
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS-IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.quizpoll.data.model;
+
+/**
+ * Finished quiz game, submitted to the server for leaderboard and statistics
+ */
+public class QuizResult {
+
+  private final Quiz quiz;
+  private final AnswerSheet answerSheet;
+
+  public QuizResult(Quiz quiz, AnswerSheet answerSheet) {
+    this.quiz = quiz;
+    this.answerSheet = answerSheet;
+  }
+
+  public Quiz getQuiz() {
+    return quiz;
+  }
+
+  /**
+   * Answers of the questions, in order of quiz.getQuestions()
+   */
+  public AnswerSheet getAnswerSheet() {
+    return answerSheet;
+  }
+}
@@ -16,11 +16,8 @@
 
 package org.quizpoll.net;
 
-import com.google.gson.reflect.TypeToken;
-
 import android.net.Uri;
 import android.net.Uri.Builder;
-import android.text.TextUtils;
 import android.widget.Toast;
 
 import org.apache.http.Header;
@@ -29,22 +26,18 @@ import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpUriRequest;
-import org.apache.http.entity.StringEntity;
-import org.quizpoll.data.Preferences;
-import org.quizpoll.data.Preferences.PrefType;
-import org.quizpoll.data.model.Answer;
+import org.quizpoll.data.QuizSessionStore;
+import org.quizpoll.data.QuizStore;
 import org.quizpoll.data.model.DocsEntry;
 import org.quizpoll.data.model.LeaderboardEntry;
 import org.quizpoll.data.model.Poll;
 import org.quizpoll.data.model.PollResponse;
-import org.quizpoll.data.model.Question;
+import org.quizpoll.data.model.PollStatus;
 import org.quizpoll.data.model.Quiz;
+import org.quizpoll.data.model.QuizResult;
 import org.quizpoll.ui.GoogleAuthActivity;
 import org.quizpoll.R;
 
-import java.io.UnsupportedEncodingException;
-import java.lang.reflect.Type;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -56,33 +49,33 @@ public class AppEngineHelper extends HttpHelper {
   public static final String BROKER_URL = "http://quiz-n-poll.appspot.com";
 
   // Message types
-  public static final int LOGIN = -1;
   public static final int COLLECTION_DOCUMENTS = 0;
-  public static final int QUIZ = 1;
+  public static final int QUIZ = 1; // Stored quiz is revalidated, 304 means unchanged
   public static final int QUIZ_LEADERBOARD = 2;
-  public static final int QUIZ_SUBMIT = 3;
+  public static final int QUIZ_SUBMIT = 3; // Request data is QuizResult
   public static final int POLL = 4;
-  public static final int POLL_STATUS = 5;
-  public static final int POLL_SUBMIT = 6;
+  public static final int POLL_STATUS = 5; // Response data is PollStatus
+  public static final int POLL_SUBMIT = 6; // Request data is PollResponse
+  public static final int POLL_STATUS_WAIT = 7; // Response data is PollStatus
 
   protected GoogleAuthActivity authActivity;
+  // Submission stored in the outbox, null for other message types
+  private volatile Uri submission;
+  private String idempotencyKey;
+  private String payload;
+  // Cookie sent with the request
+  private String cookie;
 
   public AppEngineHelper(int messageType, Object data, boolean showDialog,
       GoogleAuthActivity authActivity, HttpListener listener) {
     super(messageType, data, showDialog, authActivity, listener);
     this.authActivity = authActivity;
-    if (messageType == LOGIN) {
-      start();
-    } else {
-      authActivity.authenticatedRequest(GoogleAuthActivity.AUTHSERVER_APPENGINE, this);
-    }
+    authActivity.authenticatedRequest(GoogleAuthActivity.AUTHSERVER_APPENGINE, this);
   }
 
   @Override
   public int getDialogMessage() {
     switch (messageType) {
-      case LOGIN:
-        return R.string.verifying_google_account;
       case COLLECTION_DOCUMENTS:
         return R.string.fetching_quiz_games;
       case QUIZ:
@@ -99,18 +92,48 @@ public class AppEngineHelper extends HttpHelper {
     return UNKNOWN_DIALOG_MESSAGE;
   }
 
+  @Override
+  public int getDefaultPriority() {
+    switch (messageType) {
+      case QUIZ_SUBMIT:
+      case POLL_SUBMIT:
+        return NetworkExecutor.PRIORITY_SUBMIT;
+      case POLL_STATUS:
+      case POLL_STATUS_WAIT:
+        return NetworkExecutor.PRIORITY_STATUS;
+    }
+    return NetworkExecutor.PRIORITY_CONTENT;
+  }
+
+  @Override
+  public boolean isLongRunning() {
+    // Server holds the request until status changes
+    return messageType == POLL_STATUS_WAIT;
+  }
+
+  @Override
+  public long getCacheFreshness() {
+    switch (messageType) {
+      case COLLECTION_DOCUMENTS:
+        // List of public quizzes changes rarely
+        return 5 * 60 * 1000;
+    }
+    // Quizzes are kept and revalidated by QuizStore, they are not cached twice
+    return NO_CACHE;
+  }
+
   @Override
   public HttpUriRequest createRequest() {
     Builder url = Uri.parse(BROKER_URL).buildUpon().appendPath("qp_api");
     String postData = null;
     switch (messageType) {
-      case LOGIN:
-        return createLoginRequest(BROKER_URL);
       case COLLECTION_DOCUMENTS:
         url.appendPath("documents").appendPath((String) requestData);
         break;
       case QUIZ:
-        url.appendPath("quiz").appendPath((String) requestData);
+        // Questions are shuffled in the app, so the response can be cached
+        url.appendPath("quiz").appendPath((String) requestData)
+            .appendQueryParameter("shuffle", "0");
         break;
       case QUIZ_LEADERBOARD:
         @SuppressWarnings("unchecked")
@@ -120,112 +143,171 @@ public class AppEngineHelper extends HttpHelper {
         break;
       case QUIZ_SUBMIT:
         url.appendPath("quiz").appendPath("submit");
-        postData = getGson().toJson(requestData);
+        postData = ModelAdapters.QUIZ_RESULT.toJson((QuizResult) requestData);
         break;
       case POLL:
         url.appendPath("poll").appendPath((String) requestData);
         break;
       case POLL_STATUS:
-        @SuppressWarnings("unchecked")
-        List<String> pargs = (List<String>) requestData;
-        url.appendPath("poll").appendPath("status").appendPath(pargs.get(0))
-            .appendPath(pargs.get(1));
+        Poll statusPoll = (Poll) requestData;
+        url.appendPath("poll").appendPath("status").appendPath(statusPoll.getDocumentId())
+            .appendPath(statusPoll.getInternalDataSheet());
+        break;
+      case POLL_STATUS_WAIT:
+        // Server responds when status differs from the current one
+        Poll waitPoll = (Poll) requestData;
+        url.appendPath("poll").appendPath("status").appendPath("wait")
+            .appendPath(waitPoll.getDocumentId()).appendPath(waitPoll.getInternalDataSheet());
+        String current = getServerStatus(waitPoll.getCurrentQuestion());
+        if (current != null) {
+          url.appendQueryParameter("current", current);
+        }
         break;
       case POLL_SUBMIT:
-        Poll poll = (Poll) requestData;
         url.appendPath("poll").appendPath("submit");
-        postData = createPollSubmitRequest(poll);
+        postData = ModelAdapters.POLL_RESPONSE.toJson((PollResponse) requestData);
         break;
     }
     if (postData == null) {
-      return addCookie(new HttpGet(url.build().toString()));
+      HttpGet get = new HttpGet(url.build().toString());
+      if (messageType == POLL_STATUS || messageType == POLL_STATUS_WAIT) {
+        // Unchanged status is answered by 304 Not Modified
+        String version = ((Poll) requestData).getStatusVersion();
+        if (version != null) {
+          get.setHeader("If-None-Match", version);
+        }
+      } else {
+        // Models are smaller and faster to decode in binary, JSON is the fallback
+        get.setHeader("Accept", BinaryAdapter.CONTENT_TYPE + ", application/json;q=0.5");
+      }
+      return addCookie(get);
     } else {
       HttpPost post = new HttpPost(url.build().toString());
-      try {
-        post.setEntity(new StringEntity(postData, "utf8"));
-      } catch (UnsupportedEncodingException e) {
-        return null;
+      post.setEntity(HttpTransport.createEntity(postData, "application/json"));
+      if (idempotencyKey == null) {
+        // Submission is persisted in background before it is sent
+        idempotencyKey = SubmissionOutbox.newKey();
+        payload = postData;
       }
+      post.setHeader(SubmissionOutbox.HEADER_IDEMPOTENCY_KEY, idempotencyKey);
       return addCookie(post);
     }
   }
 
+  @Override
+  protected void beforeRequest(HttpUriRequest request) {
+    if (messageType == QUIZ
+        && QuizSessionStore.get(activity).getCached((String) requestData) != null) {
+      // Stored quiz is shown, server answers 304 Not Modified if it's current
+      String etag = QuizStore.getEtag((String) requestData, activity);
+      if (etag != null) {
+        request.setHeader("If-None-Match", etag);
+      }
+    }
+    if (idempotencyKey != null && submission == null) {
+      // Persist the submission, so it is not lost if this request fails
+      submission =
+          SubmissionOutbox.add(activity, messageType, idempotencyKey, request.getURI().toString(),
+              payload);
+    }
+  }
+
+  @Override
+  protected HttpUriRequest createReplayRequest(HttpResponse response) {
+    if (response.getStatusLine().getStatusCode() != HttpStatus.SC_MOVED_TEMPORARILY) {
+      return null;
+    }
+    // Cookie expired, release the connection first as login may need it
+    HttpTransport.consume(response);
+    if (AuthSession.get(activity).awaitCredential(AuthSession.SERVER_APPENGINE, cookie) == null) {
+      return null;
+    }
+    // Same request with the new cookie
+    return createRequest();
+  }
+
   @Override
   public void parseResponse(HttpResponse response) {
-    if (messageType == LOGIN) {
-      parseLoginResponse(response);
-    } else {
-      if (response.getStatusLine().getStatusCode() == HttpStatus.SC_MOVED_TEMPORARILY) {
-        // Cookie expired
-        error(HttpStatus.SC_UNAUTHORIZED);
-        authActivity.authenticatedRequest(GoogleAuthActivity.AUTHSERVER_APPENGINE, this, true);
-      } else {
-        switch (messageType) {
-          case COLLECTION_DOCUMENTS:
-            handleDocuments(response);
-            break;
-          case QUIZ:
-            handleQuiz(response);
-            break;
-          case QUIZ_LEADERBOARD:
-            handleLeaderboard(response);
-            break;
-          case QUIZ_SUBMIT:
-            success(null); // Ignore response
-            break;
-          case POLL:
-            handlePoll(response);
-            break;
-          case POLL_STATUS:
-            handlePollStatus(response);
-            break;
-          case POLL_SUBMIT:
-            success(null); // Ignore response
-            break;
+    if (response.getStatusLine().getStatusCode() == HttpStatus.SC_MOVED_TEMPORARILY) {
+      // Cookie can't be renewed without user, authenticate interactively
+      error(HttpStatus.SC_UNAUTHORIZED);
+      final HttpHelper helper = this;
+      runOnUiThread(new Runnable() {
+
+        @Override
+        public void run() {
+          authActivity.authenticatedRequest(GoogleAuthActivity.AUTHSERVER_APPENGINE, helper,
+              cookie);
         }
+      });
+    } else {
+      switch (messageType) {
+        case COLLECTION_DOCUMENTS:
+          handleDocuments(response);
+          break;
+        case QUIZ:
+          handleQuiz(response);
+          break;
+        case QUIZ_LEADERBOARD:
+          handleLeaderboard(response);
+          break;
+        case QUIZ_SUBMIT:
+          SubmissionOutbox.remove(activity, submission);
+          success(null); // Ignore response
+          break;
+        case POLL:
+          handlePoll(response);
+          break;
+        case POLL_STATUS:
+        case POLL_STATUS_WAIT:
+          handlePollStatus(response);
+          break;
+        case POLL_SUBMIT:
+          SubmissionOutbox.remove(activity, submission);
+          success(null); // Ignore response
+          break;
       }
     }
   }
 
   @Override
   protected void error(int statusCode) {
-    if (statusCode == HttpStatus.SC_FORBIDDEN) {
-      Toast.makeText(activity, R.string.wrong_permissions_error, Toast.LENGTH_SHORT).show();
-    } else if (statusCode == HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE) {
-      Toast.makeText(activity, R.string.format_error, Toast.LENGTH_SHORT).show();
+    if (submission != null) {
+      if (!SubmissionOutbox.isRetryable(statusCode)) {
+        SubmissionOutbox.remove(activity, submission);
+      } else if (statusCode != HttpStatus.SC_UNAUTHORIZED) {
+        // Outbox will deliver the submission later, user can continue
+        SubmissionOutbox.retryLater(activity, submission);
+        runOnUiThread(new Runnable() {
+
+          @Override
+          public void run() {
+            Toast.makeText(activity, R.string.submission_queued, Toast.LENGTH_SHORT).show();
+          }
+        });
+        success(null);
+        return;
+      }
+      // Cookie expired, request is restarted after login
     }
     super.error(statusCode);
   }
 
-  /**
-   * Makes login request to AppEngine server
-   */
-  protected HttpUriRequest createLoginRequest(String baseUrl) {
-    Uri url =
-        Uri.parse(baseUrl).buildUpon().appendEncodedPath("_ah/login")
-            .appendQueryParameter("auth", (String) requestData).build();
-    return new HttpGet(url.toString());
-  }
-
-  /**
-   * Saves cookies from AppEngine login
-   */
-  protected void parseLoginResponse(HttpResponse response) {
-    Header[] cookies = response.getHeaders("Set-Cookie");
-    String acsid = null;
-    if (cookies.length > 0) {
-      acsid = cookies[0].getValue().split("; ")[0];
-      success(acsid);
-    } else {
-      error(HttpStatus.SC_UNAUTHORIZED);
+  @Override
+  protected void onError(int statusCode) {
+    if (statusCode == HttpStatus.SC_FORBIDDEN) {
+      Toast.makeText(activity, R.string.wrong_permissions_error, Toast.LENGTH_SHORT).show();
+    } else if (statusCode == HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE) {
+      Toast.makeText(activity, R.string.format_error, Toast.LENGTH_SHORT).show();
     }
+    super.onError(statusCode);
   }
 
   /**
    * Adds AppEngine cookies to the request
    */
   private HttpUriRequest addCookie(HttpUriRequest request) {
-    String cookie = Preferences.getString(PrefType.COOKIE_APPENGINE, activity);
+    cookie = AuthSession.get(activity).getCredential(AuthSession.SERVER_APPENGINE);
     if (cookie != null) {
       request.setHeader("Cookie", cookie);
     }
@@ -233,71 +315,92 @@ public class AppEngineHelper extends HttpHelper {
   }
 
   /**
-   * Create polling submit request
+   * Parses document list inside collection from broker
    */
-  private String createPollSubmitRequest(Poll poll) {
-    Question question = poll.getQuestions().get(poll.getCurrentQuestion());
-    List<String> answeredAnswers = new ArrayList<String>();
-    for (Answer answer : question.getAnswers()) {
-      if (answer.isAnswered()) {
-        answeredAnswers.add(String.valueOf(answer.getNumber() + 1));
-      }
+  private void handleDocuments(HttpResponse response) {
+    List<DocsEntry> entries = readModel(response, ModelAdapters.DOCS_ENTRIES,
+        BinaryModelAdapters.DOCS_ENTRIES);
+    if (entries != null) {
+      success(entries);
     }
-    String answers = TextUtils.join(",", answeredAnswers);
-    PollResponse response =
-        new PollResponse(poll.getDocumentId(), poll.getResponsesSheet(), question.isAnonymous(),
-            poll.getCurrentQuestion() + 1, answers, question.isSuccess());
-    return getGson().toJson(response);
   }
 
-  /**
-   * Parses document list inside collection from broker
-   */
-  private void handleDocuments(HttpResponse response) {
-    String content = readContent(response);
-    Type collectionType = new TypeToken<List<DocsEntry>>() {}.getType();
-    List<DocsEntry> entries = getGson().fromJson(content, collectionType);
-    success(entries);
+  @Override
+  protected void notModified() {
+    if (messageType == QUIZ) {
+      QuizStore.touch((String) requestData, activity);
+    }
+    super.notModified();
   }
 
   /**
    * Parses the quiz from broker
    */
   private void handleQuiz(HttpResponse response) {
-    String content = readContent(response);
-    Quiz quiz = getGson().fromJson(content, Quiz.class);
-    success(quiz);
+    Quiz quiz = readModel(response, ModelAdapters.QUIZ, BinaryModelAdapters.QUIZ);
+    if (quiz != null) {
+      // Other activities of the game get the quiz from the session store
+      QuizSessionStore.get(activity).put(quiz);
+      Header etag = response.getFirstHeader("ETag");
+      if (QuizStore.put(quiz, etag == null ? null : etag.getValue(), activity)) {
+        success(quiz);
+      } else {
+        // Same as the stored quiz, which is already shown. The store is
+        // updated, so it isn't touched again.
+        super.notModified();
+      }
+    }
   }
 
   /**
    * Parses statistics from broker
    */
   private void handleLeaderboard(HttpResponse response) {
-    String content = readContent(response);
-    Type collectionType = new TypeToken<List<LeaderboardEntry>>() {}.getType();
-    List<LeaderboardEntry> entries = getGson().fromJson(content, collectionType);
-    success(entries);
+    List<LeaderboardEntry> entries = readModel(response, ModelAdapters.LEADERBOARD,
+        BinaryModelAdapters.LEADERBOARD);
+    if (entries != null) {
+      success(entries);
+    }
   }
 
   /**
    * Parses the polling from broker
    */
   private void handlePoll(HttpResponse response) {
-    String content = readContent(response);
-    Poll polling = getGson().fromJson(content, Poll.class);
-    success(polling);
+    Poll polling = readModel(response, ModelAdapters.POLL, BinaryModelAdapters.POLL);
+    if (polling != null) {
+      success(polling);
+    }
   }
 
   /**
    * Parses the polling status from broker
    */
   private void handlePollStatus(HttpResponse response) {
-    String content = readContent(response);
-    Integer questionNumber = getGson().fromJson(content, Integer.class);
+    Integer questionNumber = readJson(response, ModelAdapters.INTEGER);
+    if (questionNumber == null) {
+      return;
+    }
     if (questionNumber != Poll.CLOSED && questionNumber != Poll.WAITING_FOR_INSTRUCTOR) {
       questionNumber--;
     }
-    success(questionNumber);
+    // Poll is updated with the version on UI thread by the caller
+    Header etag = response.getFirstHeader("ETag");
+    success(new PollStatus(questionNumber, etag == null ? null : etag.getValue()));
+  }
+
+  /**
+   * Converts question number into status stored in spreadsheet, null if it is
+   * not known
+   */
+  private static String getServerStatus(int questionNumber) {
+    if (questionNumber == Poll.UNKNOWN) {
+      return null;
+    }
+    if (questionNumber != Poll.CLOSED && questionNumber != Poll.WAITING_FOR_INSTRUCTOR) {
+      questionNumber++;
+    }
+    return String.valueOf(questionNumber);
   }
 
 }
@@ -0,0 +1,518 @@
+/*
+ Copyright 2011 Google Inc. All Rights Reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License');
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS-IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.quizpoll.net;
+
+import android.accounts.Account;
+import android.accounts.AccountManager;
+import android.accounts.AuthenticatorException;
+import android.accounts.OperationCanceledException;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.cookie.DateParseException;
+import org.apache.http.impl.cookie.DateUtils;
+import org.quizpoll.data.Preferences;
+import org.quizpoll.data.Preferences.PrefType;
+import org.quizpoll.util.Utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * App-wide credentials for the AppEngine broker (ACSID cookie) and Google Docs
+ * (auth token). Credential of each server is refreshed at most once at a time,
+ * requests arriving during the refresh wait for its result. The AppEngine
+ * cookie is refreshed in background shortly before it expires, so requests
+ * don't wait for the two round trips of login.
+ */
+public class AuthSession {
+
+  private static final String TAG = "AuthSession";
+
+  /**
+   * Auth servers
+   */
+  public static final int SERVER_APPENGINE = 0;
+  public static final int SERVER_DOCS = 1;
+
+  private static final String ACCOUNT_TYPE = "com.google";
+  private static final String[] AUTH_TYPES = {"ah", "writely"};
+  // Netscape cookie date, used by AppEngine
+  private static final String[] COOKIE_DATE_PATTERNS = {
+    "EEE, dd-MMM-yyyy HH:mm:ss z", DateUtils.PATTERN_RFC1123
+  };
+
+  /**
+   * Timing of credential refreshes.
+   */
+  public static class Config {
+    /**
+     * Lifetime of the AppEngine cookie if the server doesn't specify it
+     */
+    public long cookieLifetime = 24 * 60 * 60 * 1000;
+    /**
+     * How long before expiry the cookie is refreshed in background
+     */
+    public long refreshAhead = 30 * 60 * 1000;
+    /**
+     * Credential renewed more recently than this is not renewed again when
+     * the server rejects it, so a misbehaving server can't cause endless
+     * renewals
+     */
+    public long minRenewInterval = 30 * 1000;
+    /**
+     * How long background request waits for refreshed credential
+     */
+    public long refreshTimeout = 30 * 1000;
+  }
+
+  private static Config config = new Config();
+  private static AuthSession instance;
+
+  private final Context context;
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private final Credential[] credentials = new Credential[2];
+
+  /**
+   * Receives result of authentication on UI thread
+   */
+  public interface Callback {
+    public void onReady();
+
+    public void onFailure();
+
+    /**
+     * User has to allow access in the screen of the intent. Its result must
+     * be passed to {@link AuthSession#permissionResult}, the refresh waits
+     * for it.
+     */
+    public void onPermissionRequired(int server, Intent intent);
+  }
+
+  /**
+   * Current credential of one server and its refresh state
+   */
+  private static class Credential {
+    final int server;
+    String value;
+    long expiresAt;
+    long renewedAt;
+    // Server rejected the value, auth token must be invalidated before refresh
+    boolean rejected;
+    boolean refreshing;
+    final List<Callback> waiters = new ArrayList<Callback>();
+    // Waiting request comes from the UI, so the user can be asked for permission
+    boolean interactive;
+    // Screen in which the user has to allow access, refresh waits for it
+    Intent permission;
+
+    Credential(int server, String value, long expiresAt) {
+      this.server = server;
+      this.value = value;
+      this.expiresAt = expiresAt;
+    }
+
+    boolean isValid(long now) {
+      return value != null && now < expiresAt;
+    }
+  }
+
+  private AuthSession(Context context) {
+    this.context = context;
+    long cookieExpiry = Preferences.getLong(PrefType.COOKIE_APPENGINE_EXPIRY, context);
+    String cookie = Preferences.getString(PrefType.COOKIE_APPENGINE, context);
+    if (cookie != null && cookieExpiry == 0) {
+      // Stored by older version of the app, expiry is unknown
+      cookieExpiry = System.currentTimeMillis() + config.refreshAhead;
+    }
+    credentials[SERVER_APPENGINE] = new Credential(SERVER_APPENGINE, cookie, cookieExpiry);
+    credentials[SERVER_DOCS] =
+        new Credential(SERVER_DOCS, Preferences.getString(PrefType.AUTH_TOKEN_DOCS, context),
+            Long.MAX_VALUE);
+  }
+
+  /**
+   * Changes timing of refreshes, has effect only before the session is created
+   */
+  public static synchronized void configure(Config newConfig) {
+    config = newConfig;
+  }
+
+  /**
+   * Returns shared session, creates it on first use
+   */
+  public static synchronized AuthSession get(Context context) {
+    if (instance == null) {
+      instance = new AuthSession(context.getApplicationContext());
+    }
+    return instance;
+  }
+
+  /**
+   * Current credential of the server, null if there is none. It's cookie for
+   * AppEngine and auth token for Docs.
+   */
+  public synchronized String getCredential(int server) {
+    return credentials[server].value;
+  }
+
+  /**
+   * Calls back when the server has valid credential, refreshes it first if
+   * needed. User is asked for permission if needed. Must be called on UI
+   * thread.
+   */
+  public void authenticate(int server, Callback callback) {
+    boolean ready;
+    Intent permission;
+    synchronized (this) {
+      Credential credential = credentials[server];
+      long now = System.currentTimeMillis();
+      ready = credential.isValid(now);
+      if (ready) {
+        if (now > credential.expiresAt - config.refreshAhead) {
+          // Use current credential, but get new one before it expires
+          refresh(credential, false);
+        }
+      } else {
+        credential.waiters.add(callback);
+        credential.interactive = true;
+        refresh(credential, true);
+      }
+      permission = ready ? null : credential.permission;
+    }
+    if (ready) {
+      callback.onReady();
+    } else if (permission != null) {
+      // Screen shown to previous request may be gone, so this one asks too
+      callback.onPermissionRequired(server, permission);
+    }
+  }
+
+  /**
+   * Returns valid credential of the server, refreshes it first if it is
+   * missing or equal to the rejected one. User is never asked. Blocks, so it
+   * must not be called on UI thread. Null if the credential can't be
+   * refreshed in background.
+   */
+  public synchronized String awaitCredential(int server, String rejectedValue) {
+    if (!reject(server, rejectedValue)) {
+      return null;
+    }
+    Credential credential = credentials[server];
+    long deadline = System.currentTimeMillis() + config.refreshTimeout;
+    boolean waited = false;
+    while (!credential.isValid(System.currentTimeMillis())) {
+      if (!credential.refreshing) {
+        if (waited) {
+          // Refresh finished without valid credential
+          return null;
+        }
+        refresh(credential, false);
+      }
+      long remaining = deadline - System.currentTimeMillis();
+      if (remaining <= 0) {
+        return null;
+      }
+      try {
+        wait(remaining);
+      } catch (InterruptedException e) {
+        return null;
+      }
+      waited = true;
+    }
+    return credential.value;
+  }
+
+  /**
+   * Continues refresh waiting for the user to allow access. Must be called
+   * on UI thread with result of the screen passed to
+   * {@link Callback#onPermissionRequired}.
+   */
+  public void permissionResult(int server, boolean granted) {
+    synchronized (this) {
+      Credential credential = credentials[server];
+      if (credential.permission == null) {
+        return;
+      }
+      credential.permission = null;
+      if (granted) {
+        // Still refreshing, token is available now
+        startRefreshTask(credential.server, true, false);
+        return;
+      }
+    }
+    finishRefresh(server, null, 0, true);
+  }
+
+  /**
+   * Refreshes AppEngine cookie in background if it is missing or expires soon,
+   * so it is ready before the first request. User is never asked.
+   */
+  public synchronized void warmUp() {
+    Credential credential = credentials[SERVER_APPENGINE];
+    if (credential.value == null
+        || System.currentTimeMillis() > credential.expiresAt - config.refreshAhead) {
+      refresh(credential, false);
+    }
+  }
+
+  /**
+   * Marks credential rejected by the server as invalid. Nothing happens if the
+   * credential was already replaced by concurrent request. Returns false if
+   * it was renewed just now, so renewing it again wouldn't help.
+   */
+  public synchronized boolean reject(int server, String rejectedValue) {
+    Credential credential = credentials[server];
+    if (rejectedValue == null || !rejectedValue.equals(credential.value)) {
+      return true;
+    }
+    if (System.currentTimeMillis() - credential.renewedAt < config.minRenewInterval) {
+      Log.w(TAG, "Renewed credential rejected: " + server);
+      return false;
+    }
+    credential.value = null;
+    credential.rejected = true;
+    return true;
+  }
+
+  /**
+   * Starts refresh unless one is already running, caller holds the lock
+   */
+  private void refresh(Credential credential, boolean interactive) {
+    if (credential.refreshing) {
+      return;
+    }
+    credential.refreshing = true;
+    boolean invalidate = credential.rejected;
+    credential.rejected = false;
+    startRefreshTask(credential.server, interactive, invalidate);
+  }
+
+  private void startRefreshTask(int server, boolean interactive, boolean invalidate) {
+    Thread thread =
+        new Thread(new RefreshTask(server, interactive, invalidate), TAG + "-" + server);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Asks the last waiting request to show permission screen, refresh stays
+   * in progress until its result. Fails the refresh if nobody waits.
+   */
+  private void requestPermission(final int server, final Intent intent) {
+    final Callback asker;
+    synchronized (this) {
+      Credential credential = credentials[server];
+      List<Callback> waiters = credential.waiters;
+      asker = waiters.isEmpty() ? null : waiters.get(waiters.size() - 1);
+      credential.permission = asker != null ? intent : null;
+    }
+    if (asker == null) {
+      finishRefresh(server, null, 0, true);
+      return;
+    }
+    handler.post(new Runnable() {
+
+      @Override
+      public void run() {
+        asker.onPermissionRequired(server, intent);
+      }
+    });
+  }
+
+  /**
+   * Stores result of refresh and notifies waiting requests
+   */
+  private void finishRefresh(int server, String value, long expiresAt, boolean interactive) {
+    final List<Callback> waiters;
+    synchronized (this) {
+      Credential credential = credentials[server];
+      credential.refreshing = false;
+      if (value == null && !interactive && credential.interactive
+          && !credential.waiters.isEmpty()) {
+        // Background refresh may have failed because user has to be asked
+        refresh(credential, true);
+        return;
+      }
+      credential.interactive = false;
+      if (value != null) {
+        credential.value = value;
+        credential.expiresAt = expiresAt;
+        credential.renewedAt = System.currentTimeMillis();
+      }
+      waiters = new ArrayList<Callback>(credential.waiters);
+      credential.waiters.clear();
+      notifyAll();
+    }
+    if (value != null) {
+      if (server == SERVER_APPENGINE) {
+        Preferences.add(PrefType.COOKIE_APPENGINE, value, context);
+        Preferences.add(PrefType.COOKIE_APPENGINE_EXPIRY, expiresAt, context);
+        // Submissions rejected because of expired cookie
+        SubmissionOutbox.drain(context);
+      } else {
+        Preferences.add(PrefType.AUTH_TOKEN_DOCS, value, context);
+      }
+    }
+    final boolean success = value != null;
+    handler.post(new Runnable() {
+
+      @Override
+      public void run() {
+        for (Callback waiter : waiters) {
+          if (success) {
+            waiter.onReady();
+          } else {
+            waiter.onFailure();
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Gets auth token from the system, blocks until it is available. Null if it
+   * can't be obtained, also when the user has to be asked. Interactive
+   * refresh then stores intent of the permission screen into the array.
+   */
+  private String getAuthToken(int server, boolean interactive, boolean invalidate,
+      Intent[] permission) {
+    AccountManager manager = AccountManager.get(context);
+    String authType = AUTH_TYPES[server];
+    if (invalidate) {
+      PrefType type =
+          server == SERVER_APPENGINE ? PrefType.AUTH_TOKEN_AE : PrefType.AUTH_TOKEN_DOCS;
+      manager.invalidateAuthToken(ACCOUNT_TYPE, Preferences.getString(type, context));
+    }
+    String email = Utils.getGoogleAccount(context);
+    if (email == null) {
+      return null;
+    }
+    Account account = new Account(email, ACCOUNT_TYPE);
+    try {
+      String token;
+      if (interactive) {
+        Bundle bundle = manager.getAuthToken(account, authType, false, null, null).getResult();
+        permission[0] = (Intent) bundle.getParcelable(AccountManager.KEY_INTENT);
+        if (permission[0] != null) {
+          return null;
+        }
+        token = bundle.getString(AccountManager.KEY_AUTHTOKEN);
+      } else {
+        token = manager.blockingGetAuthToken(account, authType, false);
+      }
+      if (token != null) {
+        if (!email.equals(Preferences.getString(PrefType.USER_EMAIL, context))) {
+          // Responses cached for the previous account must not be shown
+          HttpCache.get(context).clear();
+        }
+        Preferences.add(PrefType.USER_EMAIL, email, context);
+        if (server == SERVER_APPENGINE) {
+          Preferences.add(PrefType.AUTH_TOKEN_AE, token, context);
+        }
+      }
+      return token;
+    } catch (OperationCanceledException e) {
+      return null;
+    } catch (AuthenticatorException e) {
+      return null;
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Exchanges auth token for AppEngine cookie, blocks until it is done. Returns
+   * null on failure, otherwise stores expiry of the cookie into the array.
+   */
+  private String login(String authToken, long[] expiresAt) {
+    Uri url =
+        Uri.parse(AppEngineHelper.BROKER_URL).buildUpon().appendEncodedPath("_ah/login")
+            .appendQueryParameter("auth", authToken).build();
+    HttpResponse response;
+    try {
+      response = HttpTransport.get(context).execute(new HttpGet(url.toString()));
+    } catch (IOException e) {
+      return null;
+    }
+    try {
+      Header[] cookies = response.getHeaders("Set-Cookie");
+      if (cookies.length == 0) {
+        return null;
+      }
+      String[] parts = cookies[0].getValue().split("; ");
+      expiresAt[0] = System.currentTimeMillis() + config.cookieLifetime;
+      for (int i = 1; i < parts.length; i++) {
+        if (parts[i].toLowerCase(Locale.US).startsWith("expires=")) {
+          try {
+            expiresAt[0] =
+                DateUtils.parseDate(parts[i].substring(8), COOKIE_DATE_PATTERNS).getTime();
+          } catch (DateParseException e) {
+            // Ignore
+          }
+        }
+      }
+      return parts[0];
+    } finally {
+      HttpTransport.consume(response);
+    }
+  }
+
+  /**
+   * Gets new credential on its own thread, so it never waits for requests
+   * which wait for it
+   */
+  private class RefreshTask implements Runnable {
+
+    private final int server;
+    private final boolean interactive;
+    private final boolean invalidate;
+
+    public RefreshTask(int server, boolean interactive, boolean invalidate) {
+      this.server = server;
+      this.interactive = interactive;
+      this.invalidate = invalidate;
+    }
+
+    @Override
+    public void run() {
+      Intent[] permission = new Intent[1];
+      String value = getAuthToken(server, interactive, invalidate, permission);
+      if (permission[0] != null) {
+        Log.i(TAG, "Refresh of " + server + " needs permission");
+        requestPermission(server, permission[0]);
+        return;
+      }
+      long[] expiresAt = new long[] {Long.MAX_VALUE};
+      if (value != null && server == SERVER_APPENGINE) {
+        value = login(value, expiresAt);
+      }
+      Log.i(TAG, "Refresh of " + server + (value != null ? " succeeded" : " failed"));
+      finishRefresh(server, value, expiresAt[0], interactive);
+    }
+  }
+}
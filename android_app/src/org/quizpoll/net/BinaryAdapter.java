@@ -0,0 +1,132 @@
+/*
+ Copyright 2011 Google Inc. All Rights Reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License');
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS-IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+
+package org.quizpoll.net;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hand-written (de)serializer of one model class in compact binary format. It
+ * is an alternative to {@link JsonAdapter} for large responses, fields are
+ * written in fixed order without names. Server sends it only when the request
+ * accepts {@link #CONTENT_TYPE}, so JSON is the fallback.
+ */
+public abstract class BinaryAdapter<T> {
+
+  /**
+   * Media type of the binary format, used in Accept header
+   */
+  public static final String CONTENT_TYPE = "application/x-quizpoll-binary";
+
+  // Every document starts with magic and version, so it can't be confused with JSON
+  static final byte[] MAGIC = {'Q', 'P', 'B'};
+  static final int VERSION = 1;
+
+  /**
+   * Reads one value from the stream
+   */
+  public abstract T read(BinaryReader reader) throws IOException;
+
+  /**
+   * Writes one value into the stream
+   */
+  public abstract void write(BinaryWriter writer, T value) throws IOException;
+
+  /**
+   * Reads the whole document from the stream
+   */
+  public T fromBinary(InputStream in) throws IOException {
+    BinaryReader reader = new BinaryReader(in);
+    reader.readHeader();
+    return read(reader);
+  }
+
+  /**
+   * Writes value as the whole document
+   */
+  public byte[] toBinary(T value) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinaryWriter writer = new BinaryWriter(new BufferedOutputStream(out));
+    try {
+      writer.writeHeader();
+      write(writer, value);
+      writer.flush();
+    } catch (IOException e) {
+      // ByteArrayOutputStream doesn't throw
+      throw new IllegalStateException(e);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Checks whether the stream contains binary document, the stream must
+   * support mark and it is reset to its start
+   */
+  public static boolean isBinary(InputStream in) throws IOException {
+    in.mark(MAGIC.length);
+    try {
+      for (byte b : MAGIC) {
+        if (in.read() != b) {
+          return false;
+        }
+      }
+      return true;
+    } finally {
+      in.reset();
+    }
+  }
+
+  /**
+   * Creates adapter for list of values handled by this adapter
+   */
+  public BinaryAdapter<List<T>> listOf() {
+    final BinaryAdapter<T> itemAdapter = this;
+    return new BinaryAdapter<List<T>>() {
+
+      @Override
+      public List<T> read(BinaryReader reader) throws IOException {
+        int count = reader.readCount();
+        if (count == -1) {
+          return null;
+        }
+        // Count is not trusted for allocation
+        List<T> list = new ArrayList<T>(Math.min(count, 64));
+        for (int i = 0; i < count; i++) {
+          list.add(itemAdapter.read(reader));
+        }
+        return list;
+      }
+
+      @Override
+      public void write(BinaryWriter writer, List<T> value) throws IOException {
+        if (value == null) {
+          writer.writeCount(-1);
+          return;
+        }
+        writer.writeCount(value.size());
+        for (T item : value) {
+          itemAdapter.write(writer, item);
+        }
+      }
+    };
+  }
+}
@@ -0,0 +1,184 @@
+/*
+ Copyright 2011 Google Inc. All Rights Reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License');
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS-IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+
+package org.quizpoll.net;
+
+import org.quizpoll.data.model.Answer;
+import org.quizpoll.data.model.DocsEntry;
+import org.quizpoll.data.model.LeaderboardEntry;
+import org.quizpoll.data.model.Poll;
+import org.quizpoll.data.model.Question;
+import org.quizpoll.data.model.Quiz;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Binary adapters for models which are downloaded in large amounts. Field
+ * order is the format, it must match encoder on the server
+ * (server/wire_format.py). They are stateless, so they can be shared between
+ * threads.
+ */
+public class BinaryModelAdapters {
+
+  public static final BinaryAdapter<Answer> ANSWER = new BinaryAdapter<Answer>() {
+
+    @Override
+    public Answer read(BinaryReader reader) throws IOException {
+      String answerText = reader.readString();
+      boolean correct = reader.readBoolean();
+      int number = reader.readInt();
+      return new Answer(answerText, correct, number);
+    }
+
+    @Override
+    public void write(BinaryWriter writer, Answer value) throws IOException {
+      writer.writeString(value.getAnswerText());
+      writer.writeBoolean(value.isCorrect());
+      writer.writeInt(value.getNumber());
+    }
+  };
+
+  public static final BinaryAdapter<List<Answer>> ANSWERS = ANSWER.listOf();
+
+  public static final BinaryAdapter<Question> QUESTION = new BinaryAdapter<Question>() {
+
+    @Override
+    public Question read(BinaryReader reader) throws IOException {
+      String questionText = reader.readString();
+      List<Answer> answers = ANSWERS.read(reader);
+      int number = reader.readInt();
+      boolean anonymous = reader.readBoolean();
+      Question question;
+      try {
+        question = new Question(questionText, answers, number);
+      } catch (IllegalArgumentException e) {
+        // Answer numbers don't fit into answer key
+        throw new IOException(e.getMessage());
+      }
+      question.setAnonymous(anonymous);
+      return question;
+    }
+
+    @Override
+    public void write(BinaryWriter writer, Question value) throws IOException {
+      writer.writeString(value.getQuestionText());
+      ANSWERS.write(writer, value.getAnswers());
+      writer.writeInt(value.getNumber());
+      writer.writeBoolean(value.isAnonymous());
+    }
+  };
+
+  public static final BinaryAdapter<List<Question>> QUESTIONS = QUESTION.listOf();
+
+  public static final BinaryAdapter<Quiz> QUIZ = new BinaryAdapter<Quiz>() {
+
+    @Override
+    public Quiz read(BinaryReader reader) throws IOException {
+      String title = reader.readString();
+      String description = reader.readString();
+      String image = reader.readString();
+      String leaderboardSheet = reader.readString();
+      String statisticsSheet = reader.readString();
+      String documentId = reader.readString();
+      int score = reader.readInt();
+      List<Question> questions = QUESTIONS.read(reader);
+      Quiz quiz =
+          new Quiz(title, description, image, questions, leaderboardSheet, documentId,
+              statisticsSheet);
+      quiz.setScore(score);
+      return quiz;
+    }
+
+    @Override
+    public void write(BinaryWriter writer, Quiz value) throws IOException {
+      writer.writeString(value.getTitle());
+      writer.writeString(value.getDescription());
+      writer.writeString(value.getImage());
+      writer.writeString(value.getLeaderboardSheet());
+      writer.writeString(value.getStatisticsSheet());
+      writer.writeString(value.getDocumentId());
+      writer.writeInt(value.getScore());
+      QUESTIONS.write(writer, value.getQuestions());
+    }
+  };
+
+  public static final BinaryAdapter<Poll> POLL = new BinaryAdapter<Poll>() {
+
+    @Override
+    public Poll read(BinaryReader reader) throws IOException {
+      String title = reader.readString();
+      String internalDataSheet = reader.readString();
+      String responsesSheet = reader.readString();
+      String documentId = reader.readString();
+      List<Question> questions = QUESTIONS.read(reader);
+      return new Poll(title, questions, internalDataSheet, responsesSheet, documentId);
+    }
+
+    @Override
+    public void write(BinaryWriter writer, Poll value) throws IOException {
+      writer.writeString(value.getTitle());
+      writer.writeString(value.getInternalDataSheet());
+      writer.writeString(value.getResponsesSheet());
+      writer.writeString(value.getDocumentId());
+      QUESTIONS.write(writer, value.getQuestions());
+    }
+  };
+
+  public static final BinaryAdapter<LeaderboardEntry> LEADERBOARD_ENTRY =
+      new BinaryAdapter<LeaderboardEntry>() {
+
+        @Override
+        public LeaderboardEntry read(BinaryReader reader) throws IOException {
+          int score = reader.readInt();
+          String ldap = reader.readString();
+          return new LeaderboardEntry(score, ldap);
+        }
+
+        @Override
+        public void write(BinaryWriter writer, LeaderboardEntry value) throws IOException {
+          writer.writeInt(value.getScore());
+          writer.writeString(value.getLdap());
+        }
+      };
+
+  public static final BinaryAdapter<List<LeaderboardEntry>> LEADERBOARD =
+      LEADERBOARD_ENTRY.listOf();
+
+  public static final BinaryAdapter<DocsEntry> DOCS_ENTRY = new BinaryAdapter<DocsEntry>() {
+
+    @Override
+    public DocsEntry read(BinaryReader reader) throws IOException {
+      int type = reader.readInt();
+      String title = reader.readString();
+      String id = reader.readString();
+      return new DocsEntry(type, title, id);
+    }
+
+    @Override
+    public void write(BinaryWriter writer, DocsEntry value) throws IOException {
+      writer.writeInt(value.getType());
+      writer.writeString(value.getTitle());
+      writer.writeString(value.getId());
+    }
+  };
+
+  public static final BinaryAdapter<List<DocsEntry>> DOCS_ENTRIES = DOCS_ENTRY.listOf();
+
+  private BinaryModelAdapters() {
+  }
+}
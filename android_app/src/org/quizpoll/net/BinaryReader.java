@@ -0,0 +1,128 @@
+/*
+ Copyright 2011 Google Inc. All Rights Reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License');
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS-IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+
+package org.quizpoll.net;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads values written by {@link BinaryWriter}, malformed data is reported as
+ * IOException.
+ */
+public class BinaryReader {
+
+  // Longest string accepted, protects against allocation of garbage lengths
+  private static final int MAX_STRING_BYTES = 1024 * 1024;
+
+  private final InputStream in;
+  private final List<String> strings = new ArrayList<String>();
+  private byte[] buffer = new byte[256];
+
+  public BinaryReader(InputStream in) {
+    this.in = in;
+  }
+
+  /**
+   * Checks magic and version of the format, must be called first
+   */
+  public void readHeader() throws IOException {
+    for (byte b : BinaryAdapter.MAGIC) {
+      if (readByte() != (b & 0xff)) {
+        throw new IOException("Not a binary model");
+      }
+    }
+    int version = readByte();
+    if (version != BinaryAdapter.VERSION) {
+      throw new IOException("Unsupported binary model version " + version);
+    }
+  }
+
+  public int readInt() throws IOException {
+    int value = readVarint();
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  public boolean readBoolean() throws IOException {
+    return readByte() != 0;
+  }
+
+  public String readString() throws IOException {
+    int reference = readVarint();
+    if (reference == 0) {
+      return null;
+    }
+    if (reference <= strings.size()) {
+      return strings.get(reference - 1);
+    }
+    if (reference != strings.size() + 1) {
+      throw new IOException("Invalid string reference " + reference);
+    }
+    int length = readVarint();
+    if (length < 0 || length > MAX_STRING_BYTES) {
+      throw new IOException("Invalid string length " + length);
+    }
+    if (buffer.length < length) {
+      buffer = new byte[Math.max(length, buffer.length * 2)];
+    }
+    int offset = 0;
+    while (offset < length) {
+      int read = in.read(buffer, offset, length - offset);
+      if (read == -1) {
+        throw new EOFException();
+      }
+      offset += read;
+    }
+    String value = new String(buffer, 0, length, "UTF-8");
+    strings.add(value);
+    return value;
+  }
+
+  /**
+   * Reads number of items of the list which follow, -1 for null list
+   */
+  public int readCount() throws IOException {
+    int count = readVarint() - 1;
+    if (count < -1) {
+      throw new IOException("Invalid count " + count);
+    }
+    return count;
+  }
+
+  private int readVarint() throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      int b = readByte();
+      value |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Varint too long");
+  }
+
+  private int readByte() throws IOException {
+    int b = in.read();
+    if (b == -1) {
+      throw new EOFException();
+    }
+    return b;
+  }
+}
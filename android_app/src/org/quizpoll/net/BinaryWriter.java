@@ -0,0 +1,96 @@
+/*
+ Copyright 2011 Google Inc. All Rights Reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License');
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS-IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+
+package org.quizpoll.net;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes values in binary format of {@link BinaryAdapter}. Integers are
+ * zigzag varints, lists and strings are prefixed by their length. Every string
+ * is written in full only once, repeated strings refer to the string table.
+ */
+public class BinaryWriter {
+
+  private final OutputStream out;
+  // Index of every written string, references start at 1, 0 is null
+  private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+  public BinaryWriter(OutputStream out) {
+    this.out = out;
+  }
+
+  /**
+   * Writes magic and version of the format, must be called first
+   */
+  public void writeHeader() throws IOException {
+    out.write(BinaryAdapter.MAGIC);
+    out.write(BinaryAdapter.VERSION);
+  }
+
+  public void writeInt(int value) throws IOException {
+    writeVarint((value << 1) ^ (value >> 31));
+  }
+
+  public void writeBoolean(boolean value) throws IOException {
+    out.write(value ? 1 : 0);
+  }
+
+  /**
+   * Writes string or reference to the same string written before
+   */
+  public void writeString(String value) throws IOException {
+    if (value == null) {
+      writeVarint(0);
+      return;
+    }
+    Integer reference = strings.get(value);
+    if (reference != null) {
+      writeVarint(reference);
+      return;
+    }
+    // Reference one past the end of the table defines the next string
+    reference = strings.size() + 1;
+    strings.put(value, reference);
+    writeVarint(reference);
+    byte[] bytes = value.getBytes("UTF-8");
+    writeVarint(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Writes number of items of the list which follow, -1 for null list
+   */
+  public void writeCount(int count) throws IOException {
+    writeVarint(count + 1);
+  }
+
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  private void writeVarint(int value) throws IOException {
+    while ((value & ~0x7f) != 0) {
+      out.write((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+}
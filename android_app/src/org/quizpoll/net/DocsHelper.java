@@ -18,6 +18,7 @@ package org.quizpoll.net;
 
 import com.google.android.common.gdata2.AndroidXmlParserFactory;
 import com.google.wireless.gdata2.data.Entry;
+import com.google.wireless.gdata2.data.Feed;
 import com.google.wireless.gdata2.parser.ParseException;
 import com.google.wireless.gdata2.parser.xml.XmlGDataParser;
 
@@ -28,14 +29,15 @@ import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.quizpoll.R;
-import org.quizpoll.data.Preferences;
-import org.quizpoll.data.Preferences.PrefType;
 import org.quizpoll.data.model.DocsEntry;
+import org.quizpoll.data.model.DocsPage;
 import org.quizpoll.ui.GoogleAuthActivity;
 import org.quizpoll.util.Utils;
+import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -47,11 +49,19 @@ public class DocsHelper extends HttpHelper {
   // URL to Google Document List API - private quizzes
   private static final String PRIVATE_DOCLIST_URL =
       "https://docs.google.com/feeds/default/private/full?title=%5BQ%5D";
+  // Number of documents in one page of the feed
+  private static final int PAGE_SIZE = 50;
 
   // Message types
+  /**
+   * Page of own documents, request data is URL of the page from previous
+   * DocsPage or null for the first page
+   */
   public static final int MY_DOCUMENTS = 0;
 
   private GoogleAuthActivity authActivity;
+  // Auth token sent with the request
+  private String authToken;
 
   public DocsHelper(int messageType, Object data, boolean showDialog,
       GoogleAuthActivity authActivity,
@@ -70,18 +80,56 @@ public class DocsHelper extends HttpHelper {
     return UNKNOWN_DIALOG_MESSAGE;
   }
 
+  @Override
+  public int getDefaultPriority() {
+    if (messageType == MY_DOCUMENTS && requestData != null) {
+      // Next pages are prefetched while user browses the first one
+      return NetworkExecutor.PRIORITY_PREFETCH;
+    }
+    return NetworkExecutor.PRIORITY_CONTENT;
+  }
+
+  @Override
+  public long getCacheFreshness() {
+    switch (messageType) {
+      case MY_DOCUMENTS:
+        // Revalidate using ETag of the feed
+        return 0;
+    }
+    return NO_CACHE;
+  }
+
   @Override
   public HttpUriRequest createRequest() {
     Uri url;
     switch (messageType) {
       case MY_DOCUMENTS:
         // Own documents
-        url = Uri.parse(PRIVATE_DOCLIST_URL);
-        return addHeaders(new HttpGet(url.toString()), PrefType.AUTH_TOKEN_DOCS);
+        if (requestData != null) {
+          url = Uri.parse((String) requestData);
+        } else {
+          url =
+              Uri.parse(PRIVATE_DOCLIST_URL).buildUpon()
+                  .appendQueryParameter("max-results", String.valueOf(PAGE_SIZE)).build();
+        }
+        return addHeaders(new HttpGet(url.toString()));
     }
     return null;
   }
 
+  @Override
+  protected HttpUriRequest createReplayRequest(HttpResponse response) {
+    if (response.getStatusLine().getStatusCode() != HttpStatus.SC_UNAUTHORIZED) {
+      return null;
+    }
+    // Auth token expired, release the connection before renewing it
+    HttpTransport.consume(response);
+    if (AuthSession.get(activity).awaitCredential(AuthSession.SERVER_DOCS, authToken) == null) {
+      return null;
+    }
+    return createRequest();
+  }
+
   @Override
   public void parseResponse(HttpResponse response) {
     try {
@@ -102,23 +150,21 @@ public class DocsHelper extends HttpHelper {
   }
 
   @Override
-  protected void error(int statusCode) {
-    super.error(statusCode);
+  protected void onError(int statusCode) {
+    super.onError(statusCode);
     if (statusCode == HttpStatus.SC_UNAUTHORIZED) {
       // Authtoken expired, login again
-      authActivity.authenticatedRequest(GoogleAuthActivity.AUTHSERVER_DOCS, this, true);
+      authActivity.authenticatedRequest(GoogleAuthActivity.AUTHSERVER_DOCS, this, authToken);
     }
   }
 
   /**
    * Adds GData API headers to the request
    */
-  private HttpUriRequest addHeaders(HttpUriRequest request, PrefType type) {
+  private HttpUriRequest addHeaders(HttpUriRequest request) {
+    authToken = AuthSession.get(authActivity).getCredential(AuthSession.SERVER_DOCS);
     request.addHeader("GData-Version", "3.0");
-    request.addHeader(
-        "Authorization",
-        "GoogleLogin auth="
-            + Preferences.getString(type, authActivity));
+    request.addHeader("Authorization", "GoogleLogin auth=" + authToken);
     request.addHeader("Content-Type", "application/atom+xml; charset=UTF-8");
     return request;
   }
@@ -126,18 +172,18 @@ public class DocsHelper extends HttpHelper {
   /**
    * Starts parsing XML-based data
    */
-  private XmlGDataParser getXmlParser(HttpResponse response) throws ParseException,
+  private PagedFeedParser getXmlParser(HttpResponse response) throws ParseException,
       IllegalStateException, IOException, XmlPullParserException {
-    return new XmlGDataParser(response.getEntity().getContent(),
+    return new PagedFeedParser(response.getEntity().getContent(),
         new AndroidXmlParserFactory().createParser());
   }
 
   /**
-   * Parses documents in some folder and filter folders and spreadsheets
+   * Parses one page of documents and filter folders and spreadsheets
    */
   private void handleDocumentList(HttpResponse response) throws ParseException,
       IllegalStateException, IOException, XmlPullParserException {
-    final XmlGDataParser parser = getXmlParser(response);
+    final PagedFeedParser parser = getXmlParser(response);
     parser.parseFeedEnvelope();
     List<DocsEntry> docsEntries = new ArrayList<DocsEntry>();
     Entry entry = null;
@@ -163,7 +209,33 @@ public class DocsHelper extends HttpHelper {
       }
       docsEntries.add(new DocsEntry(type, Utils.formatQuizName(entry.getTitle()), id));
     }
-    success(docsEntries);
+    success(new DocsPage(docsEntries, parser.getNextPageUrl()));
+  }
+
+  /**
+   * Feed parser which remembers link to the next page of the feed
+   */
+  private static class PagedFeedParser extends XmlGDataParser {
+
+    private String nextPageUrl;
+
+    public PagedFeedParser(InputStream is, XmlPullParser parser) throws ParseException {
+      super(is, parser);
+    }
+
+    @Override
+    protected void handleExtraElementInFeed(Feed feed) throws XmlPullParserException,
+        IOException {
+      XmlPullParser parser = getParser();
+      if ("link".equals(parser.getName())
+          && "next".equals(parser.getAttributeValue(null, "rel"))) {
+        nextPageUrl = parser.getAttributeValue(null, "href");
+      }
+    }
+
+    public String getNextPageUrl() {
+      return nextPageUrl;
+    }
   }
 
 }
@@ -0,0 +1,265 @@
+/*
+ Copyright 2011 Google Inc. All Rights Reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License');
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS-IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.quizpoll.net;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Bounded on-disk cache of HTTP response bodies together with their ETag
+ * validators. Entries are identified by a key, which is the URL qualified by
+ * the user account. Least recently used entries are evicted when the cache
+ * grows over its size limit.
+ */
+public class HttpCache {
+
+  private static final String TAG = "HttpCache";
+  private static final String DIRECTORY = "http";
+  private static final int FORMAT_VERSION = 1;
+
+  /**
+   * Default limit of the cache size on disk
+   */
+  public static final long DEFAULT_MAX_BYTES = 2 * 1024 * 1024;
+
+  private static HttpCache instance;
+
+  private final File directory;
+  private long maxBytes = DEFAULT_MAX_BYTES;
+
+  /**
+   * Cached response
+   */
+  public static class Entry {
+    private final String etag;
+    private final long storedAt;
+    private final byte[] body;
+
+    Entry(String etag, long storedAt, byte[] body) {
+      this.etag = etag;
+      this.storedAt = storedAt;
+      this.body = body;
+    }
+
+    public String getEtag() {
+      return etag;
+    }
+
+    /**
+     * Time when entry was last downloaded or revalidated
+     */
+    public long getStoredAt() {
+      return storedAt;
+    }
+
+    public byte[] getBody() {
+      return body;
+    }
+  }
+
+  private HttpCache(File directory) {
+    this.directory = directory;
+    directory.mkdirs();
+  }
+
+  /**
+   * Returns shared cache, creates it on first use
+   */
+  public static synchronized HttpCache get(Context context) {
+    if (instance == null) {
+      instance = new HttpCache(new File(context.getCacheDir(), DIRECTORY));
+    }
+    return instance;
+  }
+
+  /**
+   * Changes limit of the cache size, entries over the limit are evicted
+   */
+  public synchronized void setMaxBytes(long maxBytes) {
+    this.maxBytes = maxBytes;
+    trim();
+  }
+
+  /**
+   * Finds entry for the key, returns null if it is not cached
+   */
+  public synchronized Entry get(String key) {
+    File file = fileFor(key);
+    if (!file.exists()) {
+      return null;
+    }
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      if (in.readInt() != FORMAT_VERSION) {
+        file.delete();
+        return null;
+      }
+      String etag = in.readUTF();
+      long storedAt = in.readLong();
+      byte[] body = new byte[in.readInt()];
+      in.readFully(body);
+      // Mark as recently used
+      file.setLastModified(System.currentTimeMillis());
+      return new Entry(etag.length() == 0 ? null : etag, storedAt, body);
+    } catch (IOException e) {
+      Log.w(TAG, "Corrupted cache entry for " + key);
+      file.delete();
+      return null;
+    } finally {
+      closeQuietly(in);
+    }
+  }
+
+  /**
+   * Stores response body for the key
+   */
+  public synchronized Entry put(String key, String etag, byte[] body) {
+    Entry entry = new Entry(etag, System.currentTimeMillis(), body);
+    File file = fileFor(key);
+    File temp = new File(directory, file.getName() + ".tmp");
+    DataOutputStream out = null;
+    try {
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+      out.writeInt(FORMAT_VERSION);
+      out.writeUTF(etag == null ? "" : etag);
+      out.writeLong(entry.getStoredAt());
+      out.writeInt(body.length);
+      out.write(body);
+      out.close();
+      out = null;
+      if (!temp.renameTo(file)) {
+        temp.delete();
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "Cannot write cache entry for " + key);
+      temp.delete();
+    } finally {
+      closeQuietly(out);
+    }
+    trim();
+    return entry;
+  }
+
+  /**
+   * Removes entry for the key
+   */
+  public synchronized void remove(String key) {
+    fileFor(key).delete();
+  }
+
+  /**
+   * Removes all entries, when they belong to another account
+   */
+  public synchronized void clear() {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      file.delete();
+    }
+  }
+
+  /**
+   * Creates key of response to the URL downloaded by the account
+   */
+  public static String key(String account, String url) {
+    return account + " " + url;
+  }
+
+  /**
+   * Deletes least recently used entries until the cache fits into its limit
+   */
+  private void trim() {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    long size = 0;
+    for (File file : files) {
+      size += file.length();
+    }
+    if (size <= maxBytes) {
+      return;
+    }
+    Arrays.sort(files, new Comparator<File>() {
+
+      @Override
+      public int compare(File file1, File file2) {
+        long diff = file1.lastModified() - file2.lastModified();
+        return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+      }
+    });
+    for (File file : files) {
+      if (size <= maxBytes) {
+        break;
+      }
+      size -= file.length();
+      file.delete();
+    }
+  }
+
+  private File fileFor(String key) {
+    return new File(directory, md5(key));
+  }
+
+  /**
+   * Hashes key or URL into file name
+   */
+  static String md5(String text) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("MD5");
+      byte[] hash = digest.digest(text.getBytes("UTF-8"));
+      StringBuilder sb = new StringBuilder(hash.length * 2);
+      for (byte b : hash) {
+        sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+        sb.append(Character.forDigit(b & 0xf, 16));
+      }
+      return sb.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      } catch (IOException e) {
+        // Ignore
+      }
+    }
+  }
+}
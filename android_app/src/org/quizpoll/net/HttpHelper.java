@@ -28,21 +28,34 @@ import android.content.DialogInterface;
 import android.content.DialogInterface.OnClickListener;
 import android.content.Intent;
 import android.net.Uri;
-import android.net.http.AndroidHttpClient;
-import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.widget.Toast;
 
+import org.apache.http.Header;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
 import org.quizpoll.R;
+import org.quizpoll.data.Preferences;
+import org.quizpoll.data.Preferences.PrefType;
 import org.quizpoll.ui.AboutActivity;
-import org.quizpoll.util.Utils;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Handles HTTP connections, connection progress and downloading data from the
@@ -53,8 +66,6 @@ public abstract class HttpHelper {
 
   protected static final String TAG = "HttpHelper";
 
-  private static final String USER_AGENT = "Android/org.quizpoll/";
-
   /**
    * Should be returned when network connection error occurs.
    */
@@ -67,6 +78,19 @@ public abstract class HttpHelper {
    * Should be returned when no dialog message is defined;
    */
   public static final int UNKNOWN_DIALOG_MESSAGE = -1;
+  /**
+   * Should be returned when response of the message type must not be cached
+   */
+  public static final long NO_CACHE = -1;
+
+  private static Gson gson;
+  /**
+   * Identical GET requests which are in progress, mapped to helpers waiting
+   * for their result
+   */
+  private static final Map<String, List<HttpHelper>> inFlight =
+      new HashMap<String, List<HttpHelper>>();
+  private static final Handler mainHandler = new Handler(Looper.getMainLooper());
 
   protected final int messageType;
   protected final Object requestData;
@@ -74,7 +98,16 @@ public abstract class HttpHelper {
   protected final Activity activity;
   private ProgressDialog progressDialog;
   private final boolean showDialog;
-  private AndroidHttpClient httpClient;
+  // Key of coalesced request if this helper is executing it
+  private String flightKey;
+  // Priority of the last start, kept for restarts after authentication
+  private int priority = -1;
+  // Number of starts, restart after authentication starts the next one
+  private volatile int generation;
+  // Last start whose result or error was reported to the listener
+  private volatile int deliveredGeneration;
+  // Listener wants the unchanged request made again when its task ends
+  private volatile boolean repeatRequested;
 
   public HttpHelper(int messageType, Object data, boolean showDialog, Activity context,
       HttpListener listener) {
@@ -86,9 +119,19 @@ public abstract class HttpHelper {
   }
 
   /**
-   * Starts the HTTP request-response
+   * Starts the HTTP request-response with default priority of the message type
    */
   public void start() {
+    start(priority != -1 ? priority : getDefaultPriority());
+  }
+
+  /**
+   * Starts the HTTP request-response, priority is one of
+   * NetworkExecutor.PRIORITY_* constants
+   */
+  public void start(int priority) {
+    this.priority = priority;
+    generation++;
     if (showDialog) {
       progressDialog = new ProgressDialog(activity);
       progressDialog.setOwnerActivity(activity);
@@ -96,7 +139,26 @@ public abstract class HttpHelper {
       progressDialog.setMessage(activity.getString(message));
       progressDialog.show();
     }
-    new NetworkTask().execute();
+    HttpUriRequest request = createRequest();
+    String host = request == null ? null : request.getURI().getHost();
+    NetworkExecutor.get().execute(host, priority, isLongRunning(),
+        new NetworkTask(request, generation, new RequestMetrics.Sample()));
+  }
+
+  /**
+   * Subclass can change priority of its message types, content fetching
+   * priority is used by default
+   */
+  public int getDefaultPriority() {
+    return NetworkExecutor.PRIORITY_CONTENT;
+  }
+
+  /**
+   * Subclass marks message types which the server holds for long time, e.g.
+   * long-polls, executor limits number of them running at once
+   */
+  public boolean isLongRunning() {
+    return false;
   }
 
   /**
@@ -110,33 +172,128 @@ public abstract class HttpHelper {
   public abstract HttpUriRequest createRequest();
 
   /**
-   * Subclass should implement parsing of valid response
+   * Subclass should implement parsing of valid response, it is called on
+   * background thread
    */
   public abstract void parseResponse(HttpResponse response);
 
   /**
-   * Makes HTTP request with JSON data.
+   * Subclass can allow caching of GET responses on disk. Returns time in
+   * milliseconds for which cached response is used without asking the server,
+   * 0 to always revalidate cached response with the server or NO_CACHE.
    */
-  private HttpResponse doRequest(HttpUriRequest request) {
+  public long getCacheFreshness() {
+    return NO_CACHE;
+  }
+
+  /**
+   * Subclass can provide result without network request, e.g. from its own
+   * cache. Called on background thread, null means the request is made.
+   */
+  protected Object loadLocally() {
+    return null;
+  }
+
+  /**
+   * Subclass can prepare sending of the request, e.g. store it. Called on
+   * background thread when the request is going to be made.
+   */
+  protected void beforeRequest(HttpUriRequest request) {
+  }
+
+  /**
+   * Subclass can send the request again when the response shows that its
+   * credentials have expired, e.g. after renewing them. Called on background
+   * thread before the response is handled, returns the new request or null.
+   * Request is replayed at most once.
+   */
+  protected HttpUriRequest createReplayRequest(HttpResponse response) {
+    return null;
+  }
+
+  /**
+   * Makes HTTP request with JSON data using shared transport.
+   */
+  private HttpResponse doRequest(HttpUriRequest request, RequestMetrics.Sample sample) {
     try {
-      httpClient =
-          AndroidHttpClient.newInstance(USER_AGENT + Utils.getVersion(activity) + "/"
-              + Utils.getVersionCode(activity));
-      Log.i(TAG, "Request: " + request.getURI());
-      HttpResponse response = httpClient.execute(request);
-      Log.i(TAG, "Response: " + response.getStatusLine().toString());
-      return response;
+      long freshness = getCacheFreshness();
+      if (freshness != NO_CACHE && request instanceof HttpGet) {
+        return doCachedRequest(request, freshness, sample);
+      }
+      return execute(request, sample);
     } catch (IOException e) {
       return null;
     }
   }
 
+  /**
+   * Executes request using shared transport, body of the response is metered
+   */
+  private HttpResponse execute(HttpUriRequest request, RequestMetrics.Sample sample)
+      throws IOException {
+    Log.i(TAG, "Request: " + request.getURI());
+    long start = System.nanoTime();
+    HttpResponse response = HttpTransport.get(activity).execute(request);
+    sample.firstByte(System.nanoTime() - start, response.getStatusLine().getStatusCode());
+    response.setEntity(sample.meter(response.getEntity()));
+    Log.i(TAG, "Response: " + response.getStatusLine().toString());
+    return response;
+  }
+
+  /**
+   * Serves response from disk cache when it is fresh, otherwise revalidates it
+   * using If-None-Match. Response 304 Not Modified is treated as cache hit.
+   */
+  private HttpResponse doCachedRequest(HttpUriRequest request, long freshness,
+      RequestMetrics.Sample sample) throws IOException {
+    HttpCache cache = HttpCache.get(activity);
+    String url = request.getURI().toString();
+    // Responses differ between users, so the same URL is cached per account
+    String key = HttpCache.key(Preferences.getString(PrefType.USER_EMAIL, activity), url);
+    HttpCache.Entry entry = cache.get(key);
+    if (entry != null) {
+      if (System.currentTimeMillis() - entry.getStoredAt() < freshness) {
+        Log.i(TAG, "Cache hit: " + url);
+        sample.servedLocally();
+        return createCachedResponse(entry);
+      }
+      if (entry.getEtag() != null) {
+        request.setHeader("If-None-Match", entry.getEtag());
+      }
+    }
+    HttpResponse response = execute(request, sample);
+    int statusCode = response.getStatusLine().getStatusCode();
+    if (statusCode == HttpStatus.SC_NOT_MODIFIED && entry != null) {
+      HttpTransport.consume(response);
+      entry = cache.put(key, entry.getEtag(), entry.getBody());
+      return createCachedResponse(entry);
+    }
+    Header etag = response.getFirstHeader("ETag");
+    if (statusCode == HttpStatus.SC_OK && etag != null && response.getEntity() != null) {
+      byte[] body = EntityUtils.toByteArray(response.getEntity());
+      cache.put(key, etag.getValue(), body);
+      response.setEntity(new ByteArrayEntity(body));
+    }
+    return response;
+  }
+
+  /**
+   * Creates successful response with cached body
+   */
+  private HttpResponse createCachedResponse(HttpCache.Entry entry) {
+    HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+    response.setEntity(new ByteArrayEntity(entry.getBody()));
+    return response;
+  }
+
   /**
    * Handles received data from network.
    */
   private void handleResponse(HttpResponse response) {
     int statusCode = response.getStatusLine().getStatusCode();
-    if (statusCode <= HttpStatus.SC_MOVED_TEMPORARILY) {
+    if (statusCode == HttpStatus.SC_NOT_MODIFIED) {
+      notModified();
+    } else if (statusCode <= HttpStatus.SC_MOVED_TEMPORARILY) {
       parseResponse(response);
     } else {
       error(statusCode);
@@ -144,54 +301,227 @@ public abstract class HttpHelper {
   }
 
   /**
-   * Reads content of HTTP response, is used in subclasses
+   * Decodes JSON directly from the response stream without buffering whole
+   * content as a string, is used in subclasses
    */
-  protected String readContent(HttpResponse response) {
+  protected <T> T readJson(HttpResponse response, JsonAdapter<T> adapter) {
+    Reader reader = null;
     try {
-      BufferedReader br =
-          new BufferedReader(new InputStreamReader(response.getEntity().getContent()));
-      StringBuilder sb = new StringBuilder();
-      String line;
-      while ((line = br.readLine()) != null) {
-        sb.append(line);
-      }
-      String content = sb.toString();
-      if (content != null) {
-        Log.i(TAG, content);
+      reader = new InputStreamReader(response.getEntity().getContent(), "UTF-8");
+      return adapter.fromJson(reader);
+    } catch (IOException e) {
+      // Connection problem or malformed JSON
+      error(ERROR_CONNECTION);
+      return null;
+    } catch (IllegalStateException e) {
+      // Unexpected token
+      error(ERROR_CONNECTION);
+      return null;
+    } catch (NumberFormatException e) {
+      error(ERROR_CONNECTION);
+      return null;
+    } finally {
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (IOException e) {
+          // Ignore
+        }
       }
+    }
+  }
 
-      br.close();
-      return content;
+  /**
+   * Decodes model from the response in binary format when server sent it,
+   * otherwise from JSON. Format is recognized from the content, so cached
+   * responses of both formats can be read.
+   */
+  protected <T> T readModel(HttpResponse response, JsonAdapter<T> jsonAdapter,
+      BinaryAdapter<T> binaryAdapter) {
+    InputStream in = null;
+    try {
+      in = new BufferedInputStream(response.getEntity().getContent());
+      if (BinaryAdapter.isBinary(in)) {
+        return binaryAdapter.fromBinary(in);
+      }
+      return jsonAdapter.fromJson(new InputStreamReader(in, "UTF-8"));
     } catch (IOException e) {
+      // Connection problem or malformed data
+      error(ERROR_CONNECTION);
+      return null;
+    } catch (IllegalStateException e) {
+      // Unexpected token
       error(ERROR_CONNECTION);
       return null;
+    } catch (NumberFormatException e) {
+      error(ERROR_CONNECTION);
+      return null;
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException e) {
+          // Ignore
+        }
+      }
     }
   }
 
   /**
-   * Creates new GSON parser instance, is used in subclasses
+   * Returns shared GSON parser instance, is used in subclasses. Model classes
+   * should be parsed with {@link ModelAdapters} instead.
    */
-  protected Gson getGson() {
-    return new GsonBuilder().setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
-        .create();
+  protected static synchronized Gson getGson() {
+    if (gson == null) {
+      gson =
+          new GsonBuilder().setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
+              .create();
+    }
+    return gson;
+  }
+
+  /**
+   * Registers GET request as in progress. If identical request is already in
+   * progress, this helper waits for its result and false is returned.
+   */
+  private boolean joinFlight(HttpUriRequest request) {
+    if (!(request instanceof HttpGet)) {
+      return true;
+    }
+    String key = request.getMethod() + " " + request.getURI();
+    Header condition = request.getFirstHeader("If-None-Match");
+    if (condition != null) {
+      // Response depends on the validator
+      key += " " + condition.getValue();
+    }
+    synchronized (inFlight) {
+      List<HttpHelper> followers = inFlight.get(key);
+      if (followers != null) {
+        Log.i(TAG, "Coalesced: " + key);
+        followers.add(this);
+        return false;
+      }
+      inFlight.put(key, new ArrayList<HttpHelper>());
+      flightKey = key;
+      return true;
+    }
+  }
+
+  /**
+   * Unregisters request from progress and returns helpers waiting for it
+   */
+  private List<HttpHelper> leaveFlight() {
+    if (flightKey == null) {
+      return null;
+    }
+    synchronized (inFlight) {
+      List<HttpHelper> followers = inFlight.remove(flightKey);
+      flightKey = null;
+      return followers;
+    }
   }
 
   /**
-   * HTTP request successful, send parsed object back to caller.
+   * Closes loading dialog
    */
-  protected void success(Object responseData) {
+  private void dismissDialog() {
     if (showDialog) {
       progressDialog.hide();
       progressDialog.dismiss();
     }
-    listener.onSuccess(responseData);
-    httpClient.close();
   }
 
   /**
-   * Default handing of errors
+   * Runs code on UI thread, immediately if it is the current thread
+   */
+  protected static void runOnUiThread(Runnable runnable) {
+    if (Looper.myLooper() == Looper.getMainLooper()) {
+      runnable.run();
+    } else {
+      mainHandler.post(runnable);
+    }
+  }
+
+  /**
+   * HTTP request successful, send parsed object back to caller. Can be called
+   * from any thread, caller is notified on UI thread.
+   */
+  protected void success(final Object responseData) {
+    deliveredGeneration = generation;
+    final List<HttpHelper> followers = leaveFlight();
+    runOnUiThread(new Runnable() {
+
+      @Override
+      public void run() {
+        dismissDialog();
+        listener.onSuccess(responseData);
+        if (followers != null) {
+          for (HttpHelper follower : followers) {
+            follower.dismissDialog();
+            follower.listener.onSuccess(responseData);
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Content of conditional request is unchanged, caller is notified without
+   * any data on the current thread. Nothing is posted to UI thread unless a
+   * dialog has to be closed.
+   */
+  protected void notModified() {
+    deliveredGeneration = generation;
+    final List<HttpHelper> followers = leaveFlight();
+    repeatRequested = listener.onNotModified();
+    if (followers != null) {
+      for (HttpHelper follower : followers) {
+        if (follower.listener.onNotModified()) {
+          // Follower has no task of its own
+          follower.start();
+        }
+      }
+    }
+    if (showDialog || followers != null) {
+      runOnUiThread(new Runnable() {
+
+        @Override
+        public void run() {
+          dismissDialog();
+          if (followers != null) {
+            for (HttpHelper follower : followers) {
+              follower.dismissDialog();
+            }
+          }
+        }
+      });
+    }
+  }
+
+  /**
+   * Reports error to the caller. Can be called from any thread, the error is
+   * handled on UI thread.
    */
-  protected void error(int statusCode) {
+  protected void error(final int statusCode) {
+    deliveredGeneration = generation;
+    final List<HttpHelper> followers = leaveFlight();
+    runOnUiThread(new Runnable() {
+
+      @Override
+      public void run() {
+        onError(statusCode);
+        dismissDialog();
+        listener.onFailure(statusCode);
+        notifyFailure(followers, statusCode);
+      }
+    });
+  }
+
+  /**
+   * Default handing of errors, called on UI thread. Subclasses can show
+   * additional messages.
+   */
+  protected void onError(int statusCode) {
     // General errors
     switch (statusCode) {
       case ERROR_CONNECTION:
@@ -208,12 +538,32 @@ public abstract class HttpHelper {
         showUpgradeRequiredDialog();
         break;
     }
-    if (showDialog) {
-      progressDialog.hide();
-      progressDialog.dismiss();
+  }
+
+  /**
+   * Reports error to helpers waiting for result of this request. Errors were
+   * already shown to the user, so only listeners are notified.
+   */
+  private void failFollowers(final int statusCode) {
+    final List<HttpHelper> followers = leaveFlight();
+    if (followers != null) {
+      runOnUiThread(new Runnable() {
+
+        @Override
+        public void run() {
+          notifyFailure(followers, statusCode);
+        }
+      });
+    }
+  }
+
+  private static void notifyFailure(List<HttpHelper> followers, int statusCode) {
+    if (followers != null) {
+      for (HttpHelper follower : followers) {
+        follower.dismissDialog();
+        follower.listener.onFailure(statusCode);
+      }
     }
-    listener.onFailure(statusCode);
-    httpClient.close();
   }
 
   /**
@@ -237,21 +587,80 @@ public abstract class HttpHelper {
   }
 
   /**
-   * Make network request on background
+   * Makes network request and parses the response on background, only the
+   * result is delivered on UI thread
    */
-  private class NetworkTask extends AsyncTask<Void, Void, HttpResponse> {
+  private class NetworkTask implements Runnable {
 
-    @Override
-    protected HttpResponse doInBackground(Void... parameters) {
-      return doRequest(createRequest());
+    private final HttpUriRequest request;
+    private final int generation;
+    private final RequestMetrics.Sample sample;
+
+    public NetworkTask(HttpUriRequest request, int generation, RequestMetrics.Sample sample) {
+      this.request = request;
+      this.generation = generation;
+      this.sample = sample;
     }
 
     @Override
-    protected void onPostExecute(HttpResponse response) {
-      if (response == null) {
-        error(ERROR_CONNECTION);
-      } else {
+    public void run() {
+      sample.started();
+      try {
+        perform();
+      } finally {
+        RequestMetrics.record(HttpHelper.this.getClass(), messageType, sample);
+      }
+      if (repeatRequested) {
+        // Started after this request left the flight, so they don't mix
+        repeatRequested = false;
+        start();
+      }
+    }
+
+    private void perform() {
+      if (request != null && !joinFlight(request)) {
+        // Identical request is in progress, result will be delivered by it
+        sample.servedLocally();
+        return;
+      }
+      HttpResponse response = null;
+      try {
+        Object localResult = loadLocally();
+        if (localResult != null) {
+          sample.servedLocally();
+          success(localResult);
+          return;
+        }
+        if (request != null) {
+          beforeRequest(request);
+        }
+        response = request == null ? null : doRequest(request, sample);
+        HttpUriRequest replay = response == null ? null : createReplayRequest(response);
+        if (replay != null) {
+          // Caller gets only result of the replayed request
+          Log.i(TAG, "Replay: " + replay.getURI());
+          HttpTransport.consume(response);
+          sample.replayed();
+          response = doRequest(replay, sample);
+        }
+        if (response == null) {
+          error(ERROR_CONNECTION);
+          return;
+        }
+        sample.handling();
         handleResponse(response);
+        sample.handled();
+      } finally {
+        if (response != null) {
+          // Return connection into the pool
+          HttpTransport.consume(response);
+        }
+        if (deliveredGeneration < generation) {
+          // Failed or crashed without result, neither caller nor followers may wait forever
+          error(ERROR_CONNECTION);
+        } else {
+          failFollowers(ERROR_CONNECTION);
+        }
       }
     }
   }
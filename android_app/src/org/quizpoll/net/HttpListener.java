@@ -32,4 +32,15 @@ public abstract class HttpListener {
   public void onFailure(int errorCode) {
     // Do nothing
   }
+
+  /**
+   * Conditional request found the content unchanged, nothing was parsed.
+   * Overriding is needed only for requests sending If-None-Match. Called on
+   * background thread, so unchanged content costs no work on UI thread.
+   * Returns true to make the same request again right away, which is allowed
+   * only for requests without dialog.
+   */
+  public boolean onNotModified() {
+    return false;
+  }
 }
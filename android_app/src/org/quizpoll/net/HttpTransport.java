@@ -0,0 +1,332 @@
+/*
+ Copyright 2011 Google Inc. All Rights Reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License');
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS-IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.quizpoll.net;
+
+import android.content.Context;
+import android.net.SSLCertificateSocketFactory;
+import android.net.SSLSessionCache;
+
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.params.HttpClientParams;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+import org.apache.http.protocol.HttpContext;
+import org.quizpoll.util.Utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Process-wide HTTP transport shared by all HttpHelper subclasses. Keeps a pool
+ * of keep-alive connections and a TLS session cache, so repeated requests to
+ * the same server (e.g. poll status checks) don't pay for new TCP and TLS
+ * handshakes.
+ */
+public class HttpTransport {
+
+  private static final String USER_AGENT = "Android/org.quizpoll/";
+  // AppEngine compresses responses only for user agents containing "gzip"
+  private static final String USER_AGENT_GZIP = " (gzip)";
+  private static final String GZIP = "gzip";
+
+  /**
+   * Tunable parameters of the connection pool.
+   */
+  public static class Config {
+    /**
+     * Maximum number of pooled connections in total
+     */
+    public int maxTotalConnections = 10;
+    /**
+     * Maximum number of pooled connections to a single host
+     */
+    public int maxConnectionsPerHost = 4;
+    /**
+     * Pooled connections idle for longer than this are closed
+     */
+    public long idleTimeoutMillis = 30 * 1000;
+    /**
+     * Timeout for establishing connection and waiting for data
+     */
+    public int socketTimeoutMillis = 60 * 1000;
+    /**
+     * Whether request bodies can be compressed, server must support it
+     */
+    public boolean compressRequests = true;
+    /**
+     * Request bodies smaller than this are sent uncompressed
+     */
+    public int compressRequestsMinBytes = 512;
+  }
+
+  private static Config config = new Config();
+  private static HttpTransport instance;
+
+  private final DefaultHttpClient httpClient;
+  private final Config transportConfig;
+
+  private HttpTransport(Context context, Config config) {
+    this.transportConfig = config;
+    HttpParams params = new BasicHttpParams();
+    HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
+    HttpProtocolParams.setUserAgent(params, USER_AGENT + Utils.getVersion(context) + "/"
+        + Utils.getVersionCode(context) + USER_AGENT_GZIP);
+    HttpConnectionParams.setStaleCheckingEnabled(params, false);
+    HttpConnectionParams.setConnectionTimeout(params, config.socketTimeoutMillis);
+    HttpConnectionParams.setSoTimeout(params, config.socketTimeoutMillis);
+    HttpConnectionParams.setSocketBufferSize(params, 8192);
+    // AppEngine login answers with redirect and we need to read its cookies
+    HttpClientParams.setRedirecting(params, false);
+    ConnManagerParams.setMaxTotalConnections(params, config.maxTotalConnections);
+    ConnManagerParams.setMaxConnectionsPerRoute(params,
+        new ConnPerRouteBean(config.maxConnectionsPerHost));
+
+    // TLS sessions are cached on disk, so even the first connection after
+    // restart of the app can use abbreviated handshake
+    SSLSessionCache sessionCache = new SSLSessionCache(context.getApplicationContext());
+    SchemeRegistry schemeRegistry = new SchemeRegistry();
+    schemeRegistry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+    schemeRegistry.register(new Scheme("https", SSLCertificateSocketFactory.getHttpSocketFactory(
+        config.socketTimeoutMillis, sessionCache), 443));
+
+    ClientConnectionManager manager = new ThreadSafeClientConnManager(params, schemeRegistry);
+    httpClient = new DefaultHttpClient(manager, params);
+    httpClient.addRequestInterceptor(new HttpRequestInterceptor() {
+
+      @Override
+      public void process(HttpRequest request, HttpContext context) throws HttpException,
+          IOException {
+        if (!request.containsHeader("Accept-Encoding")) {
+          request.addHeader("Accept-Encoding", GZIP);
+        }
+      }
+    });
+    httpClient.addResponseInterceptor(new HttpResponseInterceptor() {
+
+      @Override
+      public void process(HttpResponse response, HttpContext context) throws HttpException,
+          IOException {
+        HttpEntity entity = response.getEntity();
+        if (entity != null) {
+          response.setEntity(new DecodingEntity(entity, isGzipped(entity)));
+        }
+      }
+    });
+  }
+
+  /**
+   * Changes configuration of the pool. Has effect only before first request is
+   * made.
+   */
+  public static synchronized void configure(Config newConfig) {
+    config = newConfig;
+  }
+
+  /**
+   * Returns shared transport, creates it on first use
+   */
+  public static synchronized HttpTransport get(Context context) {
+    if (instance == null) {
+      instance = new HttpTransport(context, config);
+    }
+    return instance;
+  }
+
+  /**
+   * Executes request using pooled connection. Response content must be
+   * consumed (see {@link #consume(HttpResponse)}) to return the connection
+   * back to the pool.
+   */
+  public HttpResponse execute(HttpUriRequest request) throws IOException {
+    evictIdleConnections();
+    return httpClient.execute(request);
+  }
+
+  /**
+   * Closes connections which were idle for too long or closed by the server
+   */
+  public void evictIdleConnections() {
+    ClientConnectionManager manager = httpClient.getConnectionManager();
+    manager.closeExpiredConnections();
+    manager.closeIdleConnections(transportConfig.idleTimeoutMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Creates request body, compressed with gzip if it is large enough
+   */
+  public static HttpEntity createEntity(String content, String contentType) {
+    byte[] raw;
+    try {
+      raw = content.getBytes("UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+    ByteArrayEntity entity;
+    if (config.compressRequests && raw.length >= config.compressRequestsMinBytes) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4);
+      try {
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(raw);
+        gzip.close();
+      } catch (IOException e) {
+        // ByteArrayOutputStream doesn't throw
+        throw new IllegalStateException(e);
+      }
+      entity = new ByteArrayEntity(out.toByteArray());
+      entity.setContentEncoding(GZIP);
+    } else {
+      entity = new ByteArrayEntity(raw);
+    }
+    entity.setContentType(contentType + "; charset=UTF-8");
+    TransferStats.addRequest(raw.length, entity.getContentLength());
+    return entity;
+  }
+
+  /**
+   * Checks Content-Encoding of the response
+   */
+  private static boolean isGzipped(HttpEntity entity) {
+    Header encoding = entity.getContentEncoding();
+    if (encoding != null) {
+      for (HeaderElement element : encoding.getElements()) {
+        if (element.getName().equalsIgnoreCase(GZIP)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Reads rest of the response, so the connection can be reused
+   */
+  public static void consume(HttpResponse response) {
+    HttpEntity entity = response.getEntity();
+    if (entity != null) {
+      try {
+        entity.consumeContent();
+      } catch (IOException e) {
+        // Connection is not reusable, it will be closed by the pool
+      }
+    }
+  }
+
+  /**
+   * Response entity which transparently decompresses gzipped content and
+   * counts bytes before and after decompression.
+   */
+  private static class DecodingEntity extends HttpEntityWrapper {
+
+    private final boolean gzipped;
+
+    public DecodingEntity(HttpEntity wrapped, boolean gzipped) {
+      super(wrapped);
+      this.gzipped = gzipped;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+      if (gzipped) {
+        InputStream received = new CountingInputStream(wrappedEntity.getContent(), true, false);
+        return new CountingInputStream(new GZIPInputStream(received), false, true);
+      } else {
+        return new CountingInputStream(wrappedEntity.getContent(), true, true);
+      }
+    }
+
+    @Override
+    public Header getContentEncoding() {
+      // Content is already decoded
+      return gzipped ? null : super.getContentEncoding();
+    }
+
+    @Override
+    public long getContentLength() {
+      // Length after decompression is unknown
+      return gzipped ? -1 : super.getContentLength();
+    }
+  }
+
+  /**
+   * Counts bytes read from the stream into TransferStats
+   */
+  private static class CountingInputStream extends FilterInputStream {
+
+    private final boolean received;
+    private final boolean decoded;
+
+    public CountingInputStream(InputStream in, boolean received, boolean decoded) {
+      super(in);
+      this.received = received;
+      this.decoded = decoded;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b != -1) {
+        count(1);
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) throws IOException {
+      int read = super.read(buffer, offset, count);
+      if (read > 0) {
+        count(read);
+      }
+      return read;
+    }
+
+    private void count(long bytes) {
+      if (received) {
+        TransferStats.addResponseReceived(bytes);
+      }
+      if (decoded) {
+        TransferStats.addResponseDecoded(bytes);
+      }
+    }
+  }
+}
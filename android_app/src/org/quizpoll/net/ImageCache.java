@@ -0,0 +1,308 @@
+/*
+ Copyright 2011 Google Inc. All Rights Reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License');
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS-IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.quizpoll.net;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Two-level cache of downloaded images. Decoded bitmaps are kept in memory
+ * within a byte budget, encoded images are stored on disk by URL. Both levels
+ * evict least recently used entries.
+ */
+public class ImageCache {
+
+  private static final String TAG = "ImageCache";
+  private static final String DIRECTORY = "images";
+
+  /**
+   * Default limit of the cache size on disk
+   */
+  public static final long DEFAULT_MAX_DISK_BYTES = 4 * 1024 * 1024;
+
+  private static ImageCache instance;
+
+  private final File directory;
+  private long maxDiskBytes = DEFAULT_MAX_DISK_BYTES;
+  private long maxMemoryBytes;
+  private long memoryBytes;
+  // Access-ordered, so iteration starts with least recently used bitmap
+  private final LinkedHashMap<String, Bitmap> bitmaps =
+      new LinkedHashMap<String, Bitmap>(16, 0.75f, true);
+  // Metrics
+  private long memoryHits;
+  private long diskHits;
+  private long misses;
+
+  private ImageCache(File directory, long maxMemoryBytes) {
+    this.directory = directory;
+    this.maxMemoryBytes = maxMemoryBytes;
+    directory.mkdirs();
+  }
+
+  /**
+   * Returns shared cache, creates it on first use. Memory budget is 1/8 of
+   * the heap.
+   */
+  public static synchronized ImageCache get(Context context) {
+    if (instance == null) {
+      instance =
+          new ImageCache(new File(context.getCacheDir(), DIRECTORY),
+              Runtime.getRuntime().maxMemory() / 8);
+    }
+    return instance;
+  }
+
+  /**
+   * Changes limits of the cache, entries over the limits are evicted
+   */
+  public synchronized void setMaxBytes(long maxMemoryBytes, long maxDiskBytes) {
+    this.maxMemoryBytes = maxMemoryBytes;
+    this.maxDiskBytes = maxDiskBytes;
+    trimMemory();
+    trimDisk();
+  }
+
+  /**
+   * Finds decoded bitmap in memory, null if it is not there. It's cheap, so it
+   * can be called on UI thread.
+   */
+  public synchronized Bitmap getBitmap(ImageRequest request) {
+    Bitmap bitmap = bitmaps.get(request.getKey());
+    if (bitmap != null) {
+      memoryHits++;
+    }
+    return bitmap;
+  }
+
+  /**
+   * Loads bitmap from memory or disk, null if it has to be downloaded. Must not
+   * be called on UI thread.
+   */
+  public Bitmap load(ImageRequest request) {
+    Bitmap bitmap = getBitmap(request);
+    if (bitmap != null) {
+      return bitmap;
+    }
+    byte[] data = readFromDisk(request.getUrl());
+    if (data != null) {
+      bitmap = decode(data, request);
+    }
+    synchronized (this) {
+      if (bitmap != null) {
+        diskHits++;
+        putBitmap(request, bitmap);
+      } else {
+        misses++;
+      }
+    }
+    return bitmap;
+  }
+
+  /**
+   * Stores downloaded image on disk and its decoded bitmap in memory, returns
+   * the bitmap or null if the data is not an image
+   */
+  public Bitmap put(ImageRequest request, byte[] data) {
+    Bitmap bitmap = decode(data, request);
+    if (bitmap == null) {
+      return null;
+    }
+    writeToDisk(request.getUrl(), data);
+    synchronized (this) {
+      putBitmap(request, bitmap);
+    }
+    return bitmap;
+  }
+
+  public synchronized long getMemoryHits() {
+    return memoryHits;
+  }
+
+  public synchronized long getDiskHits() {
+    return diskHits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /**
+   * Human readable summary, used for logging
+   */
+  public synchronized String summary() {
+    return "memory hits " + memoryHits + ", disk hits " + diskHits + ", misses " + misses
+        + ", memory " + memoryBytes + "/" + maxMemoryBytes + " B";
+  }
+
+  /**
+   * Decodes image scaled down to the requested size. Bounds are decoded first
+   * and the image is subsampled by power of 2, so large source images don't
+   * allocate full resolution bitmap.
+   */
+  static Bitmap decode(byte[] data, ImageRequest request) {
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    if (options.outWidth <= 0 || options.outHeight <= 0) {
+      return null;
+    }
+    int sampleSize = 1;
+    if (request.getWidth() > 0 && request.getHeight() > 0) {
+      while (options.outWidth / (sampleSize * 2) >= request.getWidth()
+          && options.outHeight / (sampleSize * 2) >= request.getHeight()) {
+        sampleSize *= 2;
+      }
+    }
+    options = new BitmapFactory.Options();
+    options.inSampleSize = sampleSize;
+    try {
+      return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    } catch (OutOfMemoryError e) {
+      Log.w(TAG, "Image too large: " + request.getUrl());
+      return null;
+    }
+  }
+
+  private void putBitmap(ImageRequest request, Bitmap bitmap) {
+    Bitmap previous = bitmaps.put(request.getKey(), bitmap);
+    if (previous != null) {
+      memoryBytes -= sizeOf(previous);
+    }
+    memoryBytes += sizeOf(bitmap);
+    trimMemory();
+  }
+
+  /**
+   * Evicts least recently used bitmaps until memory cache fits into its budget
+   */
+  private void trimMemory() {
+    Iterator<Map.Entry<String, Bitmap>> iterator = bitmaps.entrySet().iterator();
+    while (memoryBytes > maxMemoryBytes && iterator.hasNext()) {
+      memoryBytes -= sizeOf(iterator.next().getValue());
+      iterator.remove();
+    }
+  }
+
+  private static long sizeOf(Bitmap bitmap) {
+    return (long) bitmap.getRowBytes() * bitmap.getHeight();
+  }
+
+  private synchronized byte[] readFromDisk(String url) {
+    File file = new File(directory, HttpCache.md5(url));
+    if (!file.exists()) {
+      return null;
+    }
+    InputStream in = null;
+    try {
+      byte[] data = new byte[(int) file.length()];
+      in = new FileInputStream(file);
+      int offset = 0;
+      int read;
+      while (offset < data.length && (read = in.read(data, offset, data.length - offset)) != -1) {
+        offset += read;
+      }
+      // Mark as recently used
+      file.setLastModified(System.currentTimeMillis());
+      return data;
+    } catch (IOException e) {
+      file.delete();
+      return null;
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException e) {
+          // Ignore
+        }
+      }
+    }
+  }
+
+  private synchronized void writeToDisk(String url, byte[] data) {
+    File file = new File(directory, HttpCache.md5(url));
+    File temp = new File(directory, file.getName() + ".tmp");
+    OutputStream out = null;
+    try {
+      out = new FileOutputStream(temp);
+      out.write(data);
+      out.close();
+      out = null;
+      if (!temp.renameTo(file)) {
+        temp.delete();
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "Cannot write image for " + url);
+      temp.delete();
+    } finally {
+      if (out != null) {
+        try {
+          out.close();
+        } catch (IOException e) {
+          // Ignore
+        }
+      }
+    }
+    trimDisk();
+  }
+
+  /**
+   * Deletes least recently used images until disk cache fits into its limit
+   */
+  private void trimDisk() {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    long size = 0;
+    for (File file : files) {
+      size += file.length();
+    }
+    if (size <= maxDiskBytes) {
+      return;
+    }
+    Arrays.sort(files, new Comparator<File>() {
+
+      @Override
+      public int compare(File file1, File file2) {
+        long diff = file1.lastModified() - file2.lastModified();
+        return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+      }
+    });
+    for (File file : files) {
+      if (size <= maxDiskBytes) {
+        break;
+      }
+      size -= file.length();
+      file.delete();
+    }
+  }
+}
@@ -18,17 +18,18 @@ package org.quizpoll.net;
 
 import android.app.Activity;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.util.EntityUtils;
 
 import java.io.IOException;
 
 /**
- * Handles creating and parsing request for image somewhere on the web.
+ * Handles creating and parsing request for image somewhere on the web. Request
+ * data is ImageRequest, images are cached in ImageCache.
  */
 public class ImageDownloadHelper extends HttpHelper {
 
@@ -44,24 +45,38 @@ public class ImageDownloadHelper extends HttpHelper {
     return UNKNOWN_DIALOG_MESSAGE;
   }
 
+  @Override
+  public int getDefaultPriority() {
+    return NetworkExecutor.PRIORITY_PREFETCH;
+  }
+
   @Override
   public HttpUriRequest createRequest() {
-    Uri url = Uri.parse((String) requestData);
+    Uri url = Uri.parse(((ImageRequest) requestData).getUrl());
     return new HttpGet(url.toString());
   }
 
+  @Override
+  protected Object loadLocally() {
+    return ImageCache.get(activity).load((ImageRequest) requestData);
+  }
+
+  /**
+   * Delivers the image, or null bitmap without any error message if it can't
+   * be read or decoded
+   */
   @Override
   public void parseResponse(HttpResponse response) {
-    Bitmap bitmap;
+    Bitmap bitmap = null;
     try {
-      bitmap = BitmapFactory.decodeStream(response.getEntity()
-          .getContent());
-      success(bitmap);
+      byte[] data = EntityUtils.toByteArray(response.getEntity());
+      bitmap = ImageCache.get(activity).put((ImageRequest) requestData, data);
     } catch (IllegalStateException e) {
       // Ignore
     } catch (IOException e) {
       // Ignore
     }
+    success(bitmap);
   }
 
 }
@@ -0,0 +1,56 @@
+/*
+ Copyright 2011 Google Inc. All Rights Reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License');
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS-IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.quizpoll.net;
+
+/**
+ * Image to download together with size of the view it is shown in. Image is
+ * decoded in lower resolution if the source is much larger than the view.
+ */
+public class ImageRequest {
+
+  private final String url;
+  private final int width;
+  private final int height;
+
+  /**
+   * Width and height are in pixels, 0 or less to decode in full resolution
+   */
+  public ImageRequest(String url, int width, int height) {
+    this.url = url;
+    this.width = width;
+    this.height = height;
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * Key of decoded bitmap in memory cache
+   */
+  String getKey() {
+    return url + "#" + width + "x" + height;
+  }
+}
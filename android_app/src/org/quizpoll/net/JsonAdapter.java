@@ -0,0 +1,94 @@
+/*
+ Copyright 2011 Google Inc. All Rights Reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License');
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS-IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.quizpoll.net;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hand-written streaming (de)serializer of one model class. It replaces
+ * reflection-based binding of GSON, field names follow the same
+ * lower_case_with_underscores policy.
+ */
+public abstract class JsonAdapter<T> extends JsonEncoder<T> {
+
+  /**
+   * Reads one value from the stream
+   */
+  public abstract T read(JsonReader reader) throws IOException;
+
+  /**
+   * Reads the whole document from the reader
+   */
+  public T fromJson(Reader in) throws IOException {
+    return read(new JsonReader(in));
+  }
+
+  /**
+   * Creates adapter for JSON array of values handled by this adapter
+   */
+  public JsonAdapter<List<T>> listOf() {
+    final JsonAdapter<T> itemAdapter = this;
+    return new JsonAdapter<List<T>>() {
+
+      @Override
+      public List<T> read(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+          reader.nextNull();
+          return null;
+        }
+        List<T> list = new ArrayList<T>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+          list.add(itemAdapter.read(reader));
+        }
+        reader.endArray();
+        return list;
+      }
+
+      @Override
+      public void write(JsonWriter writer, List<T> value) throws IOException {
+        if (value == null) {
+          writer.nullValue();
+          return;
+        }
+        writer.beginArray();
+        for (T item : value) {
+          itemAdapter.write(writer, item);
+        }
+        writer.endArray();
+      }
+    };
+  }
+
+  /**
+   * Reads string which can be null
+   */
+  protected static String nextStringOrNull(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return null;
+    }
+    return reader.nextString();
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ Copyright 2011 Google Inc. All Rights Reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License');
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS-IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.quizpoll.net;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * Hand-written streaming serializer of one model class, for models which are
+ * only sent to the server. Field names follow the lower_case_with_underscores
+ * policy of GSON.
+ */
+public abstract class JsonEncoder<T> {
+
+  /**
+   * Writes one value into the stream
+   */
+  public abstract void write(JsonWriter writer, T value) throws IOException;
+
+  /**
+   * Writes value into JSON string
+   */
+  public String toJson(T value) {
+    StringWriter out = new StringWriter();
+    JsonWriter writer = new JsonWriter(out);
+    try {
+      write(writer, value);
+      writer.close();
+    } catch (IOException e) {
+      // StringWriter doesn't throw
+      throw new IllegalStateException(e);
+    }
+    return out.toString();
+  }
+
+  /**
+   * Writes string property, null values are skipped like in GSON
+   */
+  protected static void writeString(JsonWriter writer, String name, String value)
+      throws IOException {
+    if (value != null) {
+      writer.name(name).value(value);
+    }
+  }
+}
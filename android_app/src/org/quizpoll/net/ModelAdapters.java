@@ -0,0 +1,477 @@
+/*
+ Copyright 2011 Google Inc. All Rights Reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License');
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS-IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.quizpoll.net;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import org.quizpoll.data.model.Answer;
+import org.quizpoll.data.model.AnswerSheet;
+import org.quizpoll.data.model.DocsEntry;
+import org.quizpoll.data.model.LeaderboardEntry;
+import org.quizpoll.data.model.Poll;
+import org.quizpoll.data.model.PollResponse;
+import org.quizpoll.data.model.Question;
+import org.quizpoll.data.model.Quiz;
+import org.quizpoll.data.model.QuizResult;
+import org.quizpoll.data.model.ShortenedUrl;
+import org.quizpoll.data.model.Statistics;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+
+/**
+ * JSON adapters for all classes in the data model. They are created once and
+ * are stateless, so they can be shared between threads.
+ */
+public class ModelAdapters {
+
+  public static final JsonAdapter<Answer> ANSWER = new JsonAdapter<Answer>() {
+
+    @Override
+    public Answer read(JsonReader reader) throws IOException {
+      String answerText = null;
+      boolean correct = false;
+      int number = 0;
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if (name.equals("answer_text")) {
+          answerText = nextStringOrNull(reader);
+        } else if (name.equals("correct")) {
+          correct = reader.nextBoolean();
+        } else if (name.equals("number")) {
+          number = reader.nextInt();
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      return new Answer(answerText, correct, number);
+    }
+
+    @Override
+    public void write(JsonWriter writer, Answer value) throws IOException {
+      writer.beginObject();
+      writeString(writer, "answer_text", value.getAnswerText());
+      writer.name("correct").value(value.isCorrect());
+      writer.name("number").value(value.getNumber());
+      writer.endObject();
+    }
+  };
+
+  public static final JsonAdapter<List<Answer>> ANSWERS = ANSWER.listOf();
+
+  public static final JsonAdapter<Question> QUESTION = new JsonAdapter<Question>() {
+
+    @Override
+    public Question read(JsonReader reader) throws IOException {
+      String questionText = null;
+      List<Answer> answers = null;
+      int number = 0;
+      boolean anonymous = false;
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if (name.equals("question_text")) {
+          questionText = nextStringOrNull(reader);
+        } else if (name.equals("answers")) {
+          answers = ANSWERS.read(reader);
+        } else if (name.equals("number")) {
+          number = reader.nextInt();
+        } else if (name.equals("anonymous")) {
+          anonymous = reader.nextBoolean();
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      Question question;
+      try {
+        question = new Question(questionText, answers, number);
+      } catch (IllegalArgumentException e) {
+        // Answer numbers don't fit into answer key
+        throw new IOException(e.getMessage());
+      }
+      question.setAnonymous(anonymous);
+      return question;
+    }
+
+    @Override
+    public void write(JsonWriter writer, Question value) throws IOException {
+      writer.beginObject();
+      writeString(writer, "question_text", value.getQuestionText());
+      if (value.getAnswers() != null) {
+        writer.name("answers");
+        ANSWERS.write(writer, value.getAnswers());
+      }
+      writer.name("number").value(value.getNumber());
+      writer.name("anonymous").value(value.isAnonymous());
+      writer.endObject();
+    }
+  };
+
+  public static final JsonAdapter<List<Question>> QUESTIONS = QUESTION.listOf();
+
+  public static final JsonAdapter<Quiz> QUIZ = new JsonAdapter<Quiz>() {
+
+    @Override
+    public Quiz read(JsonReader reader) throws IOException {
+      String title = null;
+      String description = null;
+      String image = null;
+      String leaderboardSheet = null;
+      String statisticsSheet = null;
+      String documentId = null;
+      int score = 0;
+      List<Question> questions = null;
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if (name.equals("title")) {
+          title = nextStringOrNull(reader);
+        } else if (name.equals("description")) {
+          description = nextStringOrNull(reader);
+        } else if (name.equals("image")) {
+          image = nextStringOrNull(reader);
+        } else if (name.equals("leaderboard_sheet")) {
+          leaderboardSheet = nextStringOrNull(reader);
+        } else if (name.equals("statistics_sheet")) {
+          statisticsSheet = nextStringOrNull(reader);
+        } else if (name.equals("document_id")) {
+          documentId = nextStringOrNull(reader);
+        } else if (name.equals("score")) {
+          score = reader.nextInt();
+        } else if (name.equals("questions")) {
+          questions = QUESTIONS.read(reader);
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      Quiz quiz =
+          new Quiz(title, description, image, questions, leaderboardSheet, documentId,
+              statisticsSheet);
+      quiz.setScore(score);
+      return quiz;
+    }
+
+    @Override
+    public void write(JsonWriter writer, Quiz value) throws IOException {
+      writer.beginObject();
+      writeString(writer, "title", value.getTitle());
+      writeString(writer, "description", value.getDescription());
+      writeString(writer, "image", value.getImage());
+      writeString(writer, "leaderboard_sheet", value.getLeaderboardSheet());
+      writeString(writer, "statistics_sheet", value.getStatisticsSheet());
+      writeString(writer, "document_id", value.getDocumentId());
+      writer.name("score").value(value.getScore());
+      if (value.getQuestions() != null) {
+        writer.name("questions");
+        QUESTIONS.write(writer, value.getQuestions());
+      }
+      writer.endObject();
+    }
+  };
+
+  /**
+   * Finished quiz game without any texts, every question is sent as its number,
+   * success 0/1 and bitmask of selected answer numbers from the answer sheet.
+   * Results are only sent to the server, so there is just the encoder.
+   */
+  public static final JsonEncoder<QuizResult> QUIZ_RESULT = new JsonEncoder<QuizResult>() {
+
+    @Override
+    public void write(JsonWriter writer, QuizResult value) throws IOException {
+      Quiz quiz = value.getQuiz();
+      AnswerSheet answerSheet = value.getAnswerSheet();
+      writer.beginObject();
+      writeString(writer, "document_id", quiz.getDocumentId());
+      writeString(writer, "leaderboard_sheet", quiz.getLeaderboardSheet());
+      writeString(writer, "statistics_sheet", quiz.getStatisticsSheet());
+      writer.name("score").value(quiz.getScore());
+      // Texts are known to the server, just [number, success, selection] per question
+      writer.name("results").beginArray();
+      for (int i = 0; i < quiz.getQuestions().size(); i++) {
+        writer.beginArray();
+        writer.value(quiz.getQuestions().get(i).getNumber());
+        writer.value(answerSheet.isCorrect(i) ? 1 : 0);
+        writer.value(answerSheet.getSelection(i));
+        writer.endArray();
+      }
+      writer.endArray();
+      writer.endObject();
+    }
+  };
+
+  public static final JsonAdapter<Poll> POLL = new JsonAdapter<Poll>() {
+
+    @Override
+    public Poll read(JsonReader reader) throws IOException {
+      String title = null;
+      String internalDataSheet = null;
+      String responsesSheet = null;
+      String documentId = null;
+      List<Question> questions = null;
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if (name.equals("title")) {
+          title = nextStringOrNull(reader);
+        } else if (name.equals("internal_data_sheet")) {
+          internalDataSheet = nextStringOrNull(reader);
+        } else if (name.equals("responses_sheet")) {
+          responsesSheet = nextStringOrNull(reader);
+        } else if (name.equals("document_id")) {
+          documentId = nextStringOrNull(reader);
+        } else if (name.equals("questions")) {
+          questions = QUESTIONS.read(reader);
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      return new Poll(title, questions, internalDataSheet, responsesSheet, documentId);
+    }
+
+    @Override
+    public void write(JsonWriter writer, Poll value) throws IOException {
+      writer.beginObject();
+      writeString(writer, "title", value.getTitle());
+      writeString(writer, "internal_data_sheet", value.getInternalDataSheet());
+      writeString(writer, "responses_sheet", value.getResponsesSheet());
+      writeString(writer, "document_id", value.getDocumentId());
+      writer.name("questions");
+      QUESTIONS.write(writer, value.getQuestions());
+      writer.endObject();
+    }
+  };
+
+  public static final JsonAdapter<PollResponse> POLL_RESPONSE = new JsonAdapter<PollResponse>() {
+
+    @Override
+    public PollResponse read(JsonReader reader) throws IOException {
+      String documentId = null;
+      String sheetId = null;
+      boolean anonymous = false;
+      int questionNumber = 0;
+      String answers = null;
+      boolean success = false;
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if (name.equals("document_id")) {
+          documentId = nextStringOrNull(reader);
+        } else if (name.equals("sheet_id")) {
+          sheetId = nextStringOrNull(reader);
+        } else if (name.equals("anonymous")) {
+          anonymous = reader.nextBoolean();
+        } else if (name.equals("question_number")) {
+          questionNumber = reader.nextInt();
+        } else if (name.equals("answers")) {
+          answers = nextStringOrNull(reader);
+        } else if (name.equals("success")) {
+          success = reader.nextBoolean();
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      return new PollResponse(documentId, sheetId, anonymous, questionNumber, answers, success);
+    }
+
+    @Override
+    public void write(JsonWriter writer, PollResponse value) throws IOException {
+      writer.beginObject();
+      writeString(writer, "document_id", value.getDocumentId());
+      writeString(writer, "sheet_id", value.getSheetId());
+      writer.name("anonymous").value(value.isAnonymous());
+      writer.name("question_number").value(value.getQuestionNumber());
+      writeString(writer, "answers", value.getAnswers());
+      writer.name("success").value(value.isSuccess());
+      writer.endObject();
+    }
+  };
+
+  public static final JsonAdapter<LeaderboardEntry> LEADERBOARD_ENTRY =
+      new JsonAdapter<LeaderboardEntry>() {
+
+        @Override
+        public LeaderboardEntry read(JsonReader reader) throws IOException {
+          int score = 0;
+          String ldap = null;
+          reader.beginObject();
+          while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("score")) {
+              // Spreadsheet sends score as a string, nextInt() parses it
+              score = reader.nextInt();
+            } else if (name.equals("ldap")) {
+              ldap = nextStringOrNull(reader);
+            } else {
+              reader.skipValue();
+            }
+          }
+          reader.endObject();
+          return new LeaderboardEntry(score, ldap);
+        }
+
+        @Override
+        public void write(JsonWriter writer, LeaderboardEntry value) throws IOException {
+          writer.beginObject();
+          writer.name("score").value(value.getScore());
+          writeString(writer, "ldap", value.getLdap());
+          writer.endObject();
+        }
+      };
+
+  public static final JsonAdapter<List<LeaderboardEntry>> LEADERBOARD =
+      LEADERBOARD_ENTRY.listOf();
+
+  public static final JsonAdapter<DocsEntry> DOCS_ENTRY = new JsonAdapter<DocsEntry>() {
+
+    @Override
+    public DocsEntry read(JsonReader reader) throws IOException {
+      int type = 0;
+      String title = null;
+      String id = null;
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if (name.equals("type")) {
+          type = reader.nextInt();
+        } else if (name.equals("title")) {
+          title = nextStringOrNull(reader);
+        } else if (name.equals("id")) {
+          id = nextStringOrNull(reader);
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      return new DocsEntry(type, title, id);
+    }
+
+    @Override
+    public void write(JsonWriter writer, DocsEntry value) throws IOException {
+      writer.beginObject();
+      writer.name("type").value(value.getType());
+      writeString(writer, "title", value.getTitle());
+      writeString(writer, "id", value.getId());
+      writer.endObject();
+    }
+  };
+
+  public static final JsonAdapter<List<DocsEntry>> DOCS_ENTRIES = DOCS_ENTRY.listOf();
+
+  public static final JsonAdapter<ShortenedUrl> SHORTENED_URL = new JsonAdapter<ShortenedUrl>() {
+
+    @Override
+    public ShortenedUrl read(JsonReader reader) throws IOException {
+      String id = null;
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if (name.equals("id")) {
+          id = nextStringOrNull(reader);
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      return new ShortenedUrl(id);
+    }
+
+    @Override
+    public void write(JsonWriter writer, ShortenedUrl value) throws IOException {
+      writer.beginObject();
+      writeString(writer, "id", value.getId());
+      writer.endObject();
+    }
+  };
+
+  public static final JsonAdapter<Statistics> STATISTICS = new JsonAdapter<Statistics>() {
+
+    @Override
+    public Statistics read(JsonReader reader) throws IOException {
+      String questionText = null;
+      int successes = 0;
+      int failures = 0;
+      List<Integer> answerCounts = null;
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if (name.equals("question_text")) {
+          questionText = nextStringOrNull(reader);
+        } else if (name.equals("successes")) {
+          successes = reader.nextInt();
+        } else if (name.equals("failures")) {
+          failures = reader.nextInt();
+        } else if (name.equals("answer_counts")) {
+          answerCounts = INTEGERS.read(reader);
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      return new Statistics(successes, failures, answerCounts, questionText);
+    }
+
+    @Override
+    public void write(JsonWriter writer, Statistics value) throws IOException {
+      writer.beginObject();
+      writeString(writer, "question_text", value.getQuestionText());
+      writer.name("successes").value(value.getSuccesses());
+      writer.name("failures").value(value.getFailures());
+      if (value.getAnswerCounts() != null) {
+        writer.name("answer_counts");
+        INTEGERS.write(writer, value.getAnswerCounts());
+      }
+      writer.endObject();
+    }
+  };
+
+  /**
+   * Bare number, server sends it either as JSON number or as a string
+   */
+  public static final JsonAdapter<Integer> INTEGER = new JsonAdapter<Integer>() {
+
+    @Override
+    public Integer read(JsonReader reader) throws IOException {
+      return reader.nextInt();
+    }
+
+    @Override
+    public Integer fromJson(Reader in) throws IOException {
+      JsonReader reader = new JsonReader(in);
+      // Poll status is a bare number, which is not a valid JSON document
+      reader.setLenient(true);
+      return read(reader);
+    }
+
+    @Override
+    public void write(JsonWriter writer, Integer value) throws IOException {
+      writer.value(value);
+    }
+  };
+
+  public static final JsonAdapter<List<Integer>> INTEGERS = INTEGER.listOf();
+
+  private ModelAdapters() {
+  }
+}
@@ -0,0 +1,270 @@
+/*
+ Copyright 2011 Google Inc. All Rights Reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License');
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS-IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.quizpoll.net;
+
+import android.os.Process;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+
+/**
+ * Runs network requests on a fixed pool of background threads. Requests with
+ * higher priority are started first and number of concurrent requests to a
+ * single host is limited, so a slow image download can't delay submitting of
+ * an answer. Long-running requests held by the server, like long-polls, are
+ * limited too, so they can't occupy threads needed by other requests.
+ */
+public class NetworkExecutor {
+
+  private static final String TAG = "NetworkExecutor";
+
+  /**
+   * Priority classes, lower number is served first
+   */
+  public static final int PRIORITY_SUBMIT = 0;
+  public static final int PRIORITY_STATUS = 1;
+  public static final int PRIORITY_CONTENT = 2;
+  public static final int PRIORITY_PREFETCH = 3;
+  private static final int PRIORITY_COUNT = 4;
+
+  /**
+   * Tunable parameters of the executor.
+   */
+  public static class Config {
+    /**
+     * Number of worker threads
+     */
+    public int threads = 4;
+    /**
+     * Maximum number of concurrent requests to a single host
+     */
+    public int maxRequestsPerHost = 3;
+    /**
+     * Maximum number of concurrent long-running requests, the rest of threads
+     * and host slots is reserved for other requests
+     */
+    public int maxLongRunning = 1;
+  }
+
+  private static Config config = new Config();
+  private static NetworkExecutor instance;
+
+  private final int maxRequestsPerHost;
+  private final int maxLongRunning;
+  // FIFO queue for each priority class
+  private final LinkedList<Task>[] queues;
+  private final Map<String, Integer> runningPerHost = new HashMap<String, Integer>();
+  private int runningLong;
+  // Metrics
+  private int queueDepth;
+  private int maxQueueDepth;
+  private final long[] executed = new long[PRIORITY_COUNT];
+  private final long[] totalWaitMillis = new long[PRIORITY_COUNT];
+
+  /**
+   * Queued request
+   */
+  private static class Task {
+    final String host;
+    final int priority;
+    final boolean longRunning;
+    final Runnable runnable;
+    final long enqueuedAt;
+
+    Task(String host, int priority, boolean longRunning, Runnable runnable) {
+      this.host = host;
+      this.priority = priority;
+      this.longRunning = longRunning;
+      this.runnable = runnable;
+      this.enqueuedAt = System.currentTimeMillis();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private NetworkExecutor(Config config) {
+    maxRequestsPerHost = config.maxRequestsPerHost;
+    maxLongRunning = config.maxLongRunning;
+    queues = new LinkedList[PRIORITY_COUNT];
+    for (int i = 0; i < PRIORITY_COUNT; i++) {
+      queues[i] = new LinkedList<Task>();
+    }
+    for (int i = 0; i < config.threads; i++) {
+      Thread worker = new Thread(new Worker(), TAG + "-" + i);
+      worker.setDaemon(true);
+      worker.start();
+    }
+  }
+
+  /**
+   * Changes configuration of the executor. Has effect only before first
+   * request is made.
+   */
+  public static synchronized void configure(Config newConfig) {
+    config = newConfig;
+  }
+
+  /**
+   * Returns shared executor, creates it on first use
+   */
+  public static synchronized NetworkExecutor get() {
+    if (instance == null) {
+      instance = new NetworkExecutor(config);
+    }
+    return instance;
+  }
+
+  /**
+   * Queues request to the host with given priority
+   */
+  public void execute(String host, int priority, Runnable runnable) {
+    execute(host, priority, false, runnable);
+  }
+
+  /**
+   * Queues request to the host with given priority, long-running request is
+   * started only when there is free slot for it
+   */
+  public synchronized void execute(String host, int priority, boolean longRunning,
+      Runnable runnable) {
+    if (priority < 0 || priority >= PRIORITY_COUNT) {
+      throw new IllegalArgumentException("Invalid priority: " + priority);
+    }
+    queues[priority].add(new Task(host, priority, longRunning, runnable));
+    queueDepth++;
+    if (queueDepth > maxQueueDepth) {
+      maxQueueDepth = queueDepth;
+    }
+    notifyAll();
+  }
+
+  /**
+   * Number of requests waiting for execution
+   */
+  public synchronized int getQueueDepth() {
+    return queueDepth;
+  }
+
+  /**
+   * Number of requests with given priority waiting for execution
+   */
+  public synchronized int getQueueDepth(int priority) {
+    return queues[priority].size();
+  }
+
+  /**
+   * Highest number of waiting requests since start of the app
+   */
+  public synchronized int getMaxQueueDepth() {
+    return maxQueueDepth;
+  }
+
+  /**
+   * Number of started requests with given priority
+   */
+  public synchronized long getExecutedCount(int priority) {
+    return executed[priority];
+  }
+
+  /**
+   * Average time in milliseconds requests with given priority spent in queue
+   */
+  public synchronized long getAverageWaitMillis(int priority) {
+    return executed[priority] == 0 ? 0 : totalWaitMillis[priority] / executed[priority];
+  }
+
+  /**
+   * Takes first task with highest priority whose host is not saturated, null
+   * if there is no such task. Long-running task also needs free slot.
+   */
+  private Task takeNext() {
+    for (LinkedList<Task> queue : queues) {
+      Iterator<Task> iterator = queue.iterator();
+      while (iterator.hasNext()) {
+        Task task = iterator.next();
+        if (task.longRunning && runningLong >= maxLongRunning) {
+          continue;
+        }
+        if (getRunning(task.host) < maxRequestsPerHost) {
+          iterator.remove();
+          if (task.longRunning) {
+            runningLong++;
+          }
+          queueDepth--;
+          runningPerHost.put(task.host, getRunning(task.host) + 1);
+          executed[task.priority]++;
+          totalWaitMillis[task.priority] += System.currentTimeMillis() - task.enqueuedAt;
+          return task;
+        }
+      }
+    }
+    return null;
+  }
+
+  private synchronized Task waitForNext() throws InterruptedException {
+    Task task;
+    while ((task = takeNext()) == null) {
+      wait();
+    }
+    return task;
+  }
+
+  private synchronized void finished(Task task) {
+    if (task.longRunning) {
+      runningLong--;
+    }
+    int running = getRunning(task.host) - 1;
+    if (running > 0) {
+      runningPerHost.put(task.host, running);
+    } else {
+      runningPerHost.remove(task.host);
+    }
+    // Some task for this host can be started now
+    notifyAll();
+  }
+
+  private int getRunning(String host) {
+    Integer running = runningPerHost.get(host);
+    return running == null ? 0 : running;
+  }
+
+  /**
+   * Worker thread taking requests from the queues
+   */
+  private class Worker implements Runnable {
+
+    @Override
+    public void run() {
+      Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+      while (true) {
+        Task task;
+        try {
+          task = waitForNext();
+        } catch (InterruptedException e) {
+          return;
+        }
+        try {
+          // HttpHelper reports failures to its listener, other exceptions are bugs and crash
+          task.runnable.run();
+        } finally {
+          finished(task);
+        }
+      }
+    }
+  }
+}
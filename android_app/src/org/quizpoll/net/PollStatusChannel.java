@@ -0,0 +1,309 @@
+/*
+ Copyright 2011 Google Inc. All Rights Reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License');
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS-IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.quizpoll.net;
+
+import android.os.Handler;
+
+import org.quizpoll.data.model.Poll;
+import org.quizpoll.data.model.PollStatus;
+import org.quizpoll.ui.GoogleAuthActivity;
+
+import java.util.Random;
+
+/**
+ * Delivers changes of poll status (current question) pushed by the broker.
+ * One long-polled request waits on the server until the instructor changes the
+ * question. If long-polling fails, status is checked periodically for a while
+ * and then long-polling is tried again.
+ * <p>
+ * Periodic checks are adaptive: they are fast right after question change and
+ * back off while students wait for instructor. All intervals are randomized,
+ * so clients of one classroom don't hit the broker at the same moment.
+ */
+public class PollStatusChannel {
+
+  /**
+   * Parameters of status checking policy.
+   */
+  public static class Config {
+    /**
+     * Interval of periodic checks, also the first one is randomized within it
+     */
+    public int baseInterval = 3000;
+    /**
+     * Interval of periodic checks shortly after question change
+     */
+    public int fastInterval = 1000;
+    /**
+     * How long after question change the fast interval is used
+     */
+    public int fastDuration = 10 * 1000;
+    /**
+     * Longest interval while waiting for instructor
+     */
+    public int maxInterval = 15 * 1000;
+    /**
+     * Growth of interval with every unchanged check while waiting for
+     * instructor
+     */
+    public float backoffFactor = 1.5f;
+    /**
+     * Random part of every interval, 0.5 means +-25 %
+     */
+    public float jitter = 0.5f;
+    /**
+     * Maximum random delay of new long-polled request after question change
+     */
+    public int reissueJitter = 300;
+    /**
+     * How long to check periodically before long-polling is tried again
+     */
+    public int fallbackDuration = 60 * 1000;
+  }
+
+  private static Config config = new Config();
+  private static final Random random = new Random();
+
+  private final GoogleAuthActivity activity;
+  private final Poll poll;
+  private final Listener listener;
+  private final Handler handler = new Handler();
+  // State below is used only on UI thread
+  private boolean running;
+  // Incremented on every start, so responses of stopped sessions are ignored
+  private int session;
+  private long fallbackUntil;
+  private long lastChange;
+  private long interval;
+  // Metrics
+  private long startedAt;
+  private int requestCount;
+
+  public PollStatusChannel(GoogleAuthActivity activity, Poll poll, Listener listener) {
+    this.activity = activity;
+    this.poll = poll;
+    this.listener = listener;
+  }
+
+  /**
+   * Changes policy of status checking, has effect on channels created later
+   */
+  public static synchronized void configure(Config newConfig) {
+    config = newConfig;
+  }
+
+  private static synchronized Config getConfig() {
+    return config;
+  }
+
+  /**
+   * Starts receiving status changes, must be called on UI thread
+   */
+  public void start() {
+    if (running) {
+      return;
+    }
+    running = true;
+    session++;
+    startedAt = System.currentTimeMillis();
+    requestCount = 0;
+    interval = getConfig().baseInterval;
+    request(session);
+  }
+
+  /**
+   * Stops receiving status changes, request in progress is ignored
+   */
+  public void stop() {
+    if (running) {
+      RequestMetrics.recordStatusSession(System.currentTimeMillis() - startedAt, requestCount);
+    }
+    running = false;
+    handler.removeCallbacksAndMessages(null);
+  }
+
+  /**
+   * Whether periodic checking is used instead of long-polling
+   */
+  public boolean isFallback() {
+    return System.currentTimeMillis() < fallbackUntil;
+  }
+
+  private void request(final int requestSession) {
+    requestCount++;
+    if (isFallback()) {
+      new AppEngineHelper(AppEngineHelper.POLL_STATUS, poll, false, activity,
+          new HttpListener() {
+
+            @Override
+            public void onSuccess(Object responseData) {
+              if (deliver(requestSession, (PollStatus) responseData)) {
+                scheduleRequest(requestSession, randomize(nextInterval()));
+              }
+            }
+
+            @Override
+            public boolean onNotModified() {
+              // Called on background thread, interval is computed on UI thread
+              handler.post(new Runnable() {
+
+                @Override
+                public void run() {
+                  scheduleRequest(requestSession, randomize(nextInterval()));
+                }
+              });
+              return false;
+            }
+
+            @Override
+            public void onFailure(int errorCode) {
+              scheduleRequest(requestSession, randomize(interval));
+            }
+          });
+    } else {
+      new AppEngineHelper(AppEngineHelper.POLL_STATUS_WAIT, poll, false, activity,
+          new HttpListener() {
+
+            @Override
+            public boolean onNotModified() {
+              // Server waited without change, wait again. Called on background
+              // thread, the request is counted and made on UI thread.
+              handler.post(new Runnable() {
+
+                @Override
+                public void run() {
+                  if (isCurrent(requestSession)) {
+                    request(requestSession);
+                  }
+                }
+              });
+              return false;
+            }
+
+            @Override
+            public void onSuccess(Object responseData) {
+              long previousChange = lastChange;
+              if (deliver(requestSession, (PollStatus) responseData)) {
+                if (lastChange != previousChange) {
+                  // All clients got the change now, spread their new requests
+                  scheduleRequest(requestSession, random(getConfig().reissueJitter));
+                } else {
+                  // Wait for next change right away
+                  request(requestSession);
+                }
+              }
+            }
+
+            @Override
+            public void onFailure(int errorCode) {
+              Config config = getConfig();
+              fallbackUntil = System.currentTimeMillis() + config.fallbackDuration;
+              interval = config.baseInterval;
+              // Random phase, so clients falling back together are spread
+              scheduleRequest(requestSession, random(config.baseInterval));
+            }
+          });
+    }
+  }
+
+  /**
+   * Plans next request of the session
+   */
+  private void scheduleRequest(final int requestSession, long delay) {
+    if (!isCurrent(requestSession)) {
+      return;
+    }
+    handler.postDelayed(new Runnable() {
+
+      @Override
+      public void run() {
+        if (isCurrent(requestSession)) {
+          request(requestSession);
+        }
+      }
+    }, delay);
+  }
+
+  /**
+   * Notifies listener if status changed, returns whether channel should
+   * continue
+   */
+  private boolean deliver(int requestSession, PollStatus status) {
+    if (!isCurrent(requestSession)) {
+      return false;
+    }
+    // Next request asks only for change of this version
+    poll.setStatusVersion(status.getVersion());
+    int questionNumber = status.getCurrentQuestion();
+    if (questionNumber != poll.getCurrentQuestion()) {
+      lastChange = System.currentTimeMillis();
+      listener.onStatusChanged(questionNumber);
+    }
+    if (questionNumber == Poll.CLOSED) {
+      stop();
+      return false;
+    }
+    return isCurrent(requestSession);
+  }
+
+  /**
+   * Computes interval of next periodic check from current status
+   */
+  private long nextInterval() {
+    Config config = getConfig();
+    if (System.currentTimeMillis() - lastChange < config.fastDuration) {
+      interval = config.fastInterval;
+    } else if (poll.getCurrentQuestion() == Poll.WAITING_FOR_INSTRUCTOR) {
+      interval = Math.min((long) (Math.max(interval, config.baseInterval)
+          * config.backoffFactor), config.maxInterval);
+    } else {
+      interval = config.baseInterval;
+    }
+    RequestMetrics.recordStatusInterval(interval);
+    return interval;
+  }
+
+  /**
+   * Adds random jitter to the interval
+   */
+  private static long randomize(long interval) {
+    float jitter = getConfig().jitter;
+    synchronized (random) {
+      return (long) (interval * (1 - jitter / 2 + random.nextFloat() * jitter));
+    }
+  }
+
+  /**
+   * Random delay between 0 and max
+   */
+  private static long random(int max) {
+    synchronized (random) {
+      return max <= 0 ? 0 : random.nextInt(max);
+    }
+  }
+
+  private boolean isCurrent(int requestSession) {
+    return running && requestSession == session;
+  }
+
+  /**
+   * Receives status changes on UI thread
+   */
+  public interface Listener {
+    public void onStatusChanged(int questionNumber);
+  }
+}
@@ -0,0 +1,475 @@
+/*
+ Copyright 2011 Google Inc. All Rights Reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License');
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS-IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.quizpoll.net;
+
+import com.google.gson.stream.JsonWriter;
+
+import android.content.Context;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Client-side latency and size of requests, per helper and message type. Every
+ * request records its queue wait, time to first byte, body read time, parse
+ * time, response size and status code into histograms with fixed buckets, so
+ * memory used doesn't grow with number of requests.
+ */
+public class RequestMetrics {
+
+  /**
+   * Name of the exported file in the app's files directory
+   */
+  public static final String EXPORT_FILE = "request_metrics.json";
+
+  // Upper bounds of latency buckets in milliseconds, last bucket is unbounded
+  private static final long[] LATENCY_BOUNDS = {
+    10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000
+  };
+  // Upper bounds of size buckets in bytes, last bucket is unbounded
+  private static final long[] SIZE_BOUNDS = {
+    256, 1024, 4 * 1024, 16 * 1024, 64 * 1024, 256 * 1024, 1024 * 1024
+  };
+  // Endpoints over the limit share one entry
+  private static final int MAX_ENDPOINTS = 64;
+  private static final String OTHER = "other";
+
+  private static final Map<String, Endpoint> endpoints = new TreeMap<String, Endpoint>();
+  // Poll status channel, guarded by endpoints
+  private static StatusChannel statusChannel = new StatusChannel();
+
+  /**
+   * Measurements of one request, filled in as the request progresses
+   */
+  static class Sample {
+    private final long enqueuedAt = System.nanoTime();
+    private long startedAt;
+    private long firstByteNanos;
+    private long readNanos;
+    private long handleStartedAt;
+    private long readNanosAtHandle;
+    private long parseNanos;
+    private long bytes;
+    private int statusCode = HttpHelper.ERROR_CONNECTION;
+    private boolean local;
+    private boolean replayed;
+
+    /**
+     * Request was taken from the queue
+     */
+    void started() {
+      startedAt = System.nanoTime();
+    }
+
+    /**
+     * Result was provided without network request of this helper, from a
+     * local cache or by identical request in progress
+     */
+    void servedLocally() {
+      local = true;
+    }
+
+    /**
+     * Request was sent again after renewal of credentials
+     */
+    void replayed() {
+      replayed = true;
+    }
+
+    /**
+     * Time from sending of the request to receiving of response headers
+     */
+    void firstByte(long nanos, int statusCode) {
+      firstByteNanos += nanos;
+      this.statusCode = statusCode;
+    }
+
+    /**
+     * Response is being handled by the helper
+     */
+    void handling() {
+      handleStartedAt = System.nanoTime();
+      readNanosAtHandle = readNanos;
+    }
+
+    /**
+     * Response was handled, time not spent reading the body is parse time
+     */
+    void handled() {
+      long readDuringHandle = readNanos - readNanosAtHandle;
+      parseNanos += Math.max(System.nanoTime() - handleStartedAt - readDuringHandle, 0);
+    }
+
+    /**
+     * Wraps response body, so time spent reading it is measured separately
+     * from parsing
+     */
+    HttpEntity meter(HttpEntity entity) {
+      return entity == null ? null : new MeteredEntity(entity, this);
+    }
+
+    private void read(long nanos, long count) {
+      readNanos += nanos;
+      bytes += count;
+    }
+  }
+
+  /**
+   * Histogram with fixed buckets
+   */
+  private static class Histogram {
+    private final long[] bounds;
+    private final long[] counts;
+    private long count;
+    private long sum;
+    private long max;
+
+    Histogram(long[] bounds) {
+      this.bounds = bounds;
+      this.counts = new long[bounds.length + 1];
+    }
+
+    void add(long value) {
+      int bucket = 0;
+      while (bucket < bounds.length && value > bounds[bucket]) {
+        bucket++;
+      }
+      counts[bucket]++;
+      count++;
+      sum += value;
+      max = Math.max(max, value);
+    }
+
+    /**
+     * Upper bound of the bucket containing given percentile, max for the last
+     * bucket
+     */
+    long percentile(int percent) {
+      long rank = (count * percent + 99) / 100;
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank && seen > 0) {
+          return i < bounds.length ? Math.min(bounds[i], max) : max;
+        }
+      }
+      return 0;
+    }
+
+    long average() {
+      return count == 0 ? 0 : sum / count;
+    }
+
+    void write(JsonWriter writer) throws IOException {
+      writer.beginObject();
+      writer.name("count").value(count);
+      writer.name("sum").value(sum);
+      writer.name("max").value(max);
+      writer.name("p50").value(percentile(50));
+      writer.name("p90").value(percentile(90));
+      writer.name("p99").value(percentile(99));
+      writer.name("buckets").beginArray();
+      for (int i = 0; i < counts.length; i++) {
+        writer.beginObject();
+        writer.name("le");
+        if (i < bounds.length) {
+          writer.value(bounds[i]);
+        } else {
+          writer.value("inf");
+        }
+        writer.name("count").value(counts[i]);
+        writer.endObject();
+      }
+      writer.endArray();
+      writer.endObject();
+    }
+
+    @Override
+    public String toString() {
+      return "p50 " + percentile(50) + ", p90 " + percentile(90) + ", avg " + average()
+          + ", max " + max;
+    }
+  }
+
+  /**
+   * Metrics of one message type of one helper
+   */
+  private static class Endpoint {
+    final Histogram queueWait = new Histogram(LATENCY_BOUNDS);
+    final Histogram firstByte = new Histogram(LATENCY_BOUNDS);
+    final Histogram read = new Histogram(LATENCY_BOUNDS);
+    final Histogram parse = new Histogram(LATENCY_BOUNDS);
+    final Histogram bytes = new Histogram(SIZE_BOUNDS);
+    // Status codes of network responses, 0 is connection error
+    final Map<Integer, Long> statusCodes = new TreeMap<Integer, Long>();
+    // Results provided without network request
+    long localCount;
+    // Requests sent again after renewal of credentials
+    long replayCount;
+
+    void add(Sample sample) {
+      queueWait.add(millis(sample.startedAt - sample.enqueuedAt));
+      if (sample.local) {
+        localCount++;
+        return;
+      }
+      if (sample.replayed) {
+        replayCount++;
+      }
+      Long count = statusCodes.get(sample.statusCode);
+      statusCodes.put(sample.statusCode, count == null ? 1 : count + 1);
+      if (sample.statusCode == HttpHelper.ERROR_CONNECTION) {
+        return;
+      }
+      firstByte.add(millis(sample.firstByteNanos));
+      read.add(millis(sample.readNanos));
+      parse.add(millis(sample.parseNanos));
+      bytes.add(sample.bytes);
+    }
+  }
+
+  /**
+   * Sessions of poll status channels, shows whether long-polling works and
+   * how the periodic checks adapt
+   */
+  private static class StatusChannel {
+    final Histogram interval = new Histogram(LATENCY_BOUNDS);
+    long sessions;
+    long requests;
+    long millis;
+
+    float getRequestRate() {
+      return millis <= 0 ? 0 : requests * 60000f / millis;
+    }
+
+    @Override
+    public String toString() {
+      return "sessions " + sessions + ", requests " + requests + ", per minute "
+          + getRequestRate();
+    }
+  }
+
+  /**
+   * Records finished request of the helper
+   */
+  static void record(Class<?> helper, int messageType, Sample sample) {
+    String name = getName(helper) + " " + messageType;
+    synchronized (endpoints) {
+      Endpoint endpoint = endpoints.get(name);
+      if (endpoint == null) {
+        if (endpoints.size() >= MAX_ENDPOINTS) {
+          name = OTHER;
+          endpoint = endpoints.get(name);
+        }
+        if (endpoint == null) {
+          endpoint = new Endpoint();
+          endpoints.put(name, endpoint);
+        }
+      }
+      endpoint.add(sample);
+    }
+  }
+
+  /**
+   * Number of requests sent again after renewal of credentials, for all
+   * endpoints
+   */
+  public static long getReplayCount() {
+    long count = 0;
+    synchronized (endpoints) {
+      for (Endpoint endpoint : endpoints.values()) {
+        count += endpoint.replayCount;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Records stopped session of poll status channel
+   */
+  static void recordStatusSession(long durationMillis, int requestCount) {
+    synchronized (endpoints) {
+      statusChannel.sessions++;
+      statusChannel.requests += requestCount;
+      statusChannel.millis += durationMillis;
+    }
+  }
+
+  /**
+   * Records interval of periodic status check, before randomization
+   */
+  static void recordStatusInterval(long intervalMillis) {
+    synchronized (endpoints) {
+      statusChannel.interval.add(intervalMillis);
+    }
+  }
+
+  public static void reset() {
+    synchronized (endpoints) {
+      endpoints.clear();
+      statusChannel = new StatusChannel();
+    }
+  }
+
+  /**
+   * Human readable summary, used on debug screen
+   */
+  public static String summary() {
+    StringBuilder sb = new StringBuilder();
+    synchronized (endpoints) {
+      sb.append("Status channel: ").append(statusChannel).append('\n');
+      sb.append("  interval ms: ").append(statusChannel.interval).append('\n');
+      for (Map.Entry<String, Endpoint> entry : endpoints.entrySet()) {
+        Endpoint endpoint = entry.getValue();
+        sb.append(entry.getKey()).append('\n');
+        sb.append("  status ").append(endpoint.statusCodes);
+        sb.append(", local ").append(endpoint.localCount);
+        sb.append(", replays ").append(endpoint.replayCount).append('\n');
+        sb.append("  queue ms: ").append(endpoint.queueWait).append('\n');
+        sb.append("  first byte ms: ").append(endpoint.firstByte).append('\n');
+        sb.append("  read ms: ").append(endpoint.read).append('\n');
+        sb.append("  parse ms: ").append(endpoint.parse).append('\n');
+        sb.append("  bytes: ").append(endpoint.bytes).append('\n');
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Writes all metrics as JSON into the app's files directory, returns the
+   * written file
+   */
+  public static File export(Context context) throws IOException {
+    File file = new File(context.getFilesDir(), EXPORT_FILE);
+    JsonWriter writer =
+        new JsonWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+    try {
+      writer.setIndent("  ");
+      writer.beginObject();
+      writer.name("exported_at").value(System.currentTimeMillis());
+      writer.name("transfer").value(TransferStats.summary());
+      synchronized (endpoints) {
+        writer.name("status_channel").beginObject();
+        writer.name("sessions").value(statusChannel.sessions);
+        writer.name("requests").value(statusChannel.requests);
+        writer.name("requests_per_minute").value(statusChannel.getRequestRate());
+        writer.name("interval_ms");
+        statusChannel.interval.write(writer);
+        writer.endObject();
+        writer.name("endpoints").beginObject();
+        for (Map.Entry<String, Endpoint> entry : endpoints.entrySet()) {
+          Endpoint endpoint = entry.getValue();
+          writer.name(entry.getKey()).beginObject();
+          writer.name("status_codes").beginObject();
+          for (Map.Entry<Integer, Long> status : endpoint.statusCodes.entrySet()) {
+            writer.name(String.valueOf(status.getKey())).value(status.getValue());
+          }
+          writer.endObject();
+          writer.name("local").value(endpoint.localCount);
+          writer.name("replays").value(endpoint.replayCount);
+          writer.name("queue_wait_ms");
+          endpoint.queueWait.write(writer);
+          writer.name("first_byte_ms");
+          endpoint.firstByte.write(writer);
+          writer.name("read_ms");
+          endpoint.read.write(writer);
+          writer.name("parse_ms");
+          endpoint.parse.write(writer);
+          writer.name("response_bytes");
+          endpoint.bytes.write(writer);
+          writer.endObject();
+        }
+        writer.endObject();
+      }
+      writer.endObject();
+    } finally {
+      writer.close();
+    }
+    return file;
+  }
+
+  /**
+   * Name of the helper class, anonymous subclasses are reported as their
+   * superclass
+   */
+  private static String getName(Class<?> helper) {
+    while (helper.getSimpleName().length() == 0 && helper.getSuperclass() != null) {
+      helper = helper.getSuperclass();
+    }
+    return helper.getSimpleName();
+  }
+
+  private static long millis(long nanos) {
+    return nanos / 1000000;
+  }
+
+  /**
+   * Response entity which measures time spent reading its content
+   */
+  private static class MeteredEntity extends HttpEntityWrapper {
+
+    private final Sample sample;
+
+    public MeteredEntity(HttpEntity wrapped, Sample sample) {
+      super(wrapped);
+      this.sample = sample;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+      return new MeteredInputStream(wrappedEntity.getContent(), sample);
+    }
+  }
+
+  private static class MeteredInputStream extends FilterInputStream {
+
+    private final Sample sample;
+
+    public MeteredInputStream(InputStream in, Sample sample) {
+      super(in);
+      this.sample = sample;
+    }
+
+    @Override
+    public int read() throws IOException {
+      long start = System.nanoTime();
+      int b = super.read();
+      sample.read(System.nanoTime() - start, b == -1 ? 0 : 1);
+      return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) throws IOException {
+      long start = System.nanoTime();
+      int read = super.read(buffer, offset, count);
+      sample.read(System.nanoTime() - start, Math.max(read, 0));
+      return read;
+    }
+  }
+
+  private RequestMetrics() {
+  }
+}
@@ -0,0 +1,324 @@
+/*
+ Copyright 2011 Google Inc. All Rights Reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License');
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS-IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.quizpoll.net;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpPost;
+import org.quizpoll.data.QuizPollProvider.Outbox;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Durable queue of quiz and poll submissions. Every submission is stored in
+ * the database before it is sent and removed when the server accepts it.
+ * Failed submissions are retried in batches with exponential backoff, also
+ * after restart of the app. Each submission carries idempotency key, so the
+ * server ignores retries of submissions it has already accepted.
+ */
+public class SubmissionOutbox {
+
+  private static final String TAG = "SubmissionOutbox";
+
+  /**
+   * Request header with idempotency key of the submission
+   */
+  public static final String HEADER_IDEMPOTENCY_KEY = "X-Idempotency-Key";
+
+  // Number of submissions sent in one batch
+  private static final int BATCH_SIZE = 10;
+  // Time given to the interactive request before the outbox retries it
+  private static final long INITIAL_DELAY = 60 * 1000;
+  private static final long MIN_BACKOFF = 5 * 1000;
+  private static final long MAX_BACKOFF = 10 * 60 * 1000;
+  // Submissions failing for longer are dropped
+  private static final int MAX_ATTEMPTS = 30;
+
+  private static final String[] PROJECTION = new String[] {
+    Outbox._ID, Outbox.IDEMPOTENCY_KEY, Outbox.URL, Outbox.PAYLOAD, Outbox.ATTEMPTS
+  };
+
+  private static final Random random = new Random();
+  private static final Handler handler = new Handler(Looper.getMainLooper());
+  private static boolean draining;
+  private static Runnable scheduledDrain;
+
+  /**
+   * Pending submission loaded from the database
+   */
+  private static class Submission {
+    final Uri uri;
+    final String key;
+    final String url;
+    final String payload;
+    final int attempts;
+
+    Submission(Cursor cursor) {
+      uri = ContentUris.withAppendedId(Outbox.CONTENT_URI, cursor.getLong(0));
+      key = cursor.getString(1);
+      url = cursor.getString(2);
+      payload = cursor.getString(3);
+      attempts = cursor.getInt(4);
+    }
+  }
+
+  /**
+   * Generates new idempotency key
+   */
+  public static String newKey() {
+    return UUID.randomUUID().toString();
+  }
+
+  /**
+   * Stores submission before it is sent, returns its URI
+   */
+  public static Uri add(Context context, int messageType, String key, String url,
+      String payload) {
+    ContentValues values = new ContentValues();
+    values.put(Outbox.MESSAGE_TYPE, messageType);
+    values.put(Outbox.IDEMPOTENCY_KEY, key);
+    values.put(Outbox.URL, url);
+    values.put(Outbox.PAYLOAD, payload);
+    values.put(Outbox.NEXT_ATTEMPT, System.currentTimeMillis() + INITIAL_DELAY);
+    return context.getContentResolver().insert(Outbox.CONTENT_URI, values);
+  }
+
+  /**
+   * Removes submission accepted or definitely rejected by the server
+   */
+  public static void remove(Context context, Uri submission) {
+    context.getContentResolver().delete(submission, null, null);
+  }
+
+  /**
+   * Schedules retry of submission which failed to be sent interactively
+   */
+  public static void retryLater(Context context, Uri submission) {
+    ContentValues values = new ContentValues();
+    values.put(Outbox.ATTEMPTS, 1);
+    values.put(Outbox.NEXT_ATTEMPT, System.currentTimeMillis() + getBackoff(1));
+    context.getContentResolver().update(submission, values, null, null);
+    schedule(context, getBackoff(1));
+  }
+
+  /**
+   * Whether submission which failed with the status code can succeed later
+   */
+  public static boolean isRetryable(int statusCode) {
+    return statusCode == HttpHelper.ERROR_CONNECTION
+        || statusCode == HttpStatus.SC_MOVED_TEMPORARILY
+        || statusCode == HttpStatus.SC_UNAUTHORIZED
+        || statusCode == HttpStatus.SC_REQUEST_TIMEOUT
+        || statusCode >= HttpStatus.SC_INTERNAL_SERVER_ERROR;
+  }
+
+  /**
+   * Sends submissions whose retry time has come. Should be called when the app
+   * starts and when user logs in.
+   */
+  public static void drain(Context context) {
+    synchronized (SubmissionOutbox.class) {
+      if (draining) {
+        return;
+      }
+      draining = true;
+    }
+    Context appContext = context.getApplicationContext();
+    String host = Uri.parse(AppEngineHelper.BROKER_URL).getHost();
+    NetworkExecutor.get().execute(host, NetworkExecutor.PRIORITY_SUBMIT,
+        new DrainTask(appContext));
+  }
+
+  /**
+   * Plans draining of the outbox after delay, while the app is running
+   */
+  private static void schedule(final Context context, long delay) {
+    final Context appContext = context.getApplicationContext();
+    synchronized (SubmissionOutbox.class) {
+      if (scheduledDrain != null) {
+        handler.removeCallbacks(scheduledDrain);
+      }
+      scheduledDrain = new Runnable() {
+
+        @Override
+        public void run() {
+          drain(appContext);
+        }
+      };
+      handler.postDelayed(scheduledDrain, delay);
+    }
+  }
+
+  /**
+   * Exponential backoff with jitter, so clients of one classroom don't retry at
+   * the same moment
+   */
+  private static long getBackoff(int attempts) {
+    long backoff = MIN_BACKOFF << Math.min(attempts - 1, 16);
+    backoff = Math.min(backoff, MAX_BACKOFF);
+    synchronized (random) {
+      return backoff / 2 + (long) (random.nextDouble() * backoff / 2);
+    }
+  }
+
+  /**
+   * Sends pending submissions on background thread
+   */
+  private static class DrainTask implements Runnable {
+
+    private final Context context;
+    private final ContentResolver resolver;
+
+    public DrainTask(Context context) {
+      this.context = context;
+      this.resolver = context.getContentResolver();
+    }
+
+    @Override
+    public void run() {
+      try {
+        List<Submission> batch;
+        boolean failed = false;
+        do {
+          batch = loadDue();
+          for (Submission submission : batch) {
+            if (!send(submission)) {
+              // Probably offline, don't try the rest of the batch now
+              failed = true;
+              break;
+            }
+          }
+        } while (!failed && batch.size() == BATCH_SIZE);
+      } finally {
+        synchronized (SubmissionOutbox.class) {
+          draining = false;
+        }
+        long next = getNextAttempt();
+        if (next != -1) {
+          schedule(context, Math.max(next - System.currentTimeMillis(), 0));
+        }
+      }
+    }
+
+    /**
+     * Loads batch of submissions ready to be sent
+     */
+    private List<Submission> loadDue() {
+      List<Submission> batch = new ArrayList<Submission>();
+      Uri uri =
+          Outbox.CONTENT_URI.buildUpon()
+              .appendQueryParameter(Outbox.LIMIT, String.valueOf(BATCH_SIZE)).build();
+      Cursor cursor = resolver.query(uri, PROJECTION, Outbox.NEXT_ATTEMPT + " <= ?",
+          new String[] {String.valueOf(System.currentTimeMillis())}, null);
+      if (cursor != null) {
+        try {
+          while (cursor.moveToNext()) {
+            batch.add(new Submission(cursor));
+          }
+        } finally {
+          cursor.close();
+        }
+      }
+      return batch;
+    }
+
+    /**
+     * Earliest time of next attempt, -1 if the outbox is empty
+     */
+    private long getNextAttempt() {
+      Cursor cursor = resolver.query(Outbox.CONTENT_URI, new String[] {Outbox.NEXT_ATTEMPT},
+          null, null, Outbox.NEXT_ATTEMPT + " ASC");
+      if (cursor == null) {
+        return -1;
+      }
+      try {
+        return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+      } finally {
+        cursor.close();
+      }
+    }
+
+    /**
+     * Sends one submission, returns false if it should be retried later
+     */
+    private boolean send(Submission submission) {
+      AuthSession session = AuthSession.get(context);
+      String cookie = session.getCredential(AuthSession.SERVER_APPENGINE);
+      int statusCode = post(submission, cookie);
+      if (statusCode == HttpStatus.SC_MOVED_TEMPORARILY) {
+        // Cookie expired, replay once with renewed one like interactive requests
+        cookie = session.awaitCredential(AuthSession.SERVER_APPENGINE, cookie);
+        if (cookie != null) {
+          statusCode = post(submission, cookie);
+        }
+      }
+      Log.i(TAG, "Submission " + submission.key + ": " + statusCode);
+      if (statusCode == HttpStatus.SC_OK) {
+        remove(context, submission.uri);
+        return true;
+      }
+      int attempts = submission.attempts + 1;
+      if (!isRetryable(statusCode) || attempts >= MAX_ATTEMPTS) {
+        Log.w(TAG, "Dropping submission " + submission.key);
+        remove(context, submission.uri);
+        return true;
+      }
+      ContentValues values = new ContentValues();
+      values.put(Outbox.ATTEMPTS, attempts);
+      values.put(Outbox.NEXT_ATTEMPT, System.currentTimeMillis() + getBackoff(attempts));
+      resolver.update(submission.uri, values, null, null);
+      return false;
+    }
+
+    /**
+     * Posts the submission with the cookie, returns status code of the response
+     */
+    private int post(Submission submission, String cookie) {
+      HttpPost post = new HttpPost(submission.url);
+      post.setEntity(HttpTransport.createEntity(submission.payload, "application/json"));
+      post.setHeader(HEADER_IDEMPOTENCY_KEY, submission.key);
+      if (cookie != null) {
+        post.setHeader("Cookie", cookie);
+      }
+      try {
+        HttpResponse response = HttpTransport.get(context).execute(post);
+        int statusCode = response.getStatusLine().getStatusCode();
+        HttpTransport.consume(response);
+        return statusCode;
+      } catch (IOException e) {
+        return HttpHelper.ERROR_CONNECTION;
+      }
+    }
+  }
+
+  private SubmissionOutbox() {
+  }
+}
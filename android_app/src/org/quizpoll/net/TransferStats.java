@@ -0,0 +1,89 @@
+/*
+ Copyright 2011 Google Inc. All Rights Reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License');
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS-IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.quizpoll.net;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of transferred bytes before and after compression, for the whole
+ * process.
+ */
+public class TransferStats {
+
+  private static final AtomicLong requestBytesRaw = new AtomicLong();
+  private static final AtomicLong requestBytesSent = new AtomicLong();
+  private static final AtomicLong responseBytesReceived = new AtomicLong();
+  private static final AtomicLong responseBytesDecoded = new AtomicLong();
+
+  /**
+   * Records request body, raw is size before compression, sent is size on the
+   * wire
+   */
+  static void addRequest(long raw, long sent) {
+    requestBytesRaw.addAndGet(raw);
+    requestBytesSent.addAndGet(sent);
+  }
+
+  /**
+   * Records bytes of response body as received from the network
+   */
+  static void addResponseReceived(long bytes) {
+    responseBytesReceived.addAndGet(bytes);
+  }
+
+  /**
+   * Records bytes of response body after decompression
+   */
+  static void addResponseDecoded(long bytes) {
+    responseBytesDecoded.addAndGet(bytes);
+  }
+
+  public static long getRequestBytesRaw() {
+    return requestBytesRaw.get();
+  }
+
+  public static long getRequestBytesSent() {
+    return requestBytesSent.get();
+  }
+
+  public static long getResponseBytesReceived() {
+    return responseBytesReceived.get();
+  }
+
+  public static long getResponseBytesDecoded() {
+    return responseBytesDecoded.get();
+  }
+
+  public static void reset() {
+    requestBytesRaw.set(0);
+    requestBytesSent.set(0);
+    responseBytesReceived.set(0);
+    responseBytesDecoded.set(0);
+  }
+
+  /**
+   * Human readable summary, used for logging
+   */
+  public static String summary() {
+    return "requests " + getRequestBytesRaw() + " B -> " + getRequestBytesSent()
+        + " B, responses " + getResponseBytesReceived() + " B -> " + getResponseBytesDecoded()
+        + " B";
+  }
+
+  private TransferStats() {
+  }
+}
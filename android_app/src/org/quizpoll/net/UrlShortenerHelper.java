@@ -17,16 +17,21 @@
 package org.quizpoll.net;
 
 import android.app.Activity;
+import android.content.Context;
 import android.net.Uri;
 
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpUriRequest;
-import org.apache.http.entity.StringEntity;
 import org.quizpoll.R;
+import org.quizpoll.data.ShortUrlStore;
 import org.quizpoll.data.model.ShortenedUrl;
 
-import java.io.UnsupportedEncodingException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.List;
 
 /**
  * Creates and parses requests for URL Shortener service.
@@ -50,26 +55,94 @@ public class UrlShortenerHelper extends HttpHelper {
     return R.string.loading;
   }
 
+  @Override
+  public int getDefaultPriority() {
+    // User waits for it before QR code or NFC is shown
+    return NetworkExecutor.PRIORITY_STATUS;
+  }
+
   @Override
   public HttpUriRequest createRequest() {
+    return createShortenRequest((String) requestData);
+  }
+
+  @Override
+  protected Object loadLocally() {
+    return ShortUrlStore.get((String) requestData, activity);
+  }
+
+  @Override
+  public void parseResponse(HttpResponse response) {
+    ShortenedUrl shortenerResponse = readJson(response, ModelAdapters.SHORTENED_URL);
+    if (shortenerResponse != null) {
+      ShortUrlStore.add((String) requestData, shortenerResponse.getId(), activity);
+      success(shortenerResponse.getId());
+    }
+  }
+
+  /**
+   * Shortens URLs which are not shortened yet in background, so sharing them
+   * later is instant
+   */
+  public static void warmUp(Context context, final List<String> longUrls) {
+    final Context appContext = context.getApplicationContext();
+    String host = Uri.parse(URL_SHORTENER_URL).getHost();
+    NetworkExecutor.get().execute(host, NetworkExecutor.PRIORITY_PREFETCH, new Runnable() {
+
+      @Override
+      public void run() {
+        for (String longUrl : longUrls) {
+          if (ShortUrlStore.get(longUrl, appContext) == null) {
+            String shortUrl = shortenNow(appContext, longUrl);
+            if (shortUrl == null) {
+              // Probably offline, try next time
+              return;
+            }
+            ShortUrlStore.add(longUrl, shortUrl, appContext);
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Calls URL shortener on current thread, returns null on failure
+   */
+  private static String shortenNow(Context context, String longUrl) {
+    HttpResponse response = null;
+    Reader reader = null;
     try {
-      Uri url = Uri.parse(URL_SHORTENER_URL).buildUpon()
-          .appendQueryParameter("key", URL_SHORTENER_API_KEY).build();
-      HttpUriRequest request = new HttpPost(url.toString());
-      String requestString = "{\"longUrl\": \"" + (String) requestData + "\"}";
-      ((HttpPost) request).setEntity(new StringEntity(requestString));
-      request.setHeader("Content-Type", "application/json");
-      return request;
-    } catch (UnsupportedEncodingException e) {
+      response = HttpTransport.get(context).execute(createShortenRequest(longUrl));
+      if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+        return null;
+      }
+      reader = new InputStreamReader(response.getEntity().getContent(), "UTF-8");
+      return ModelAdapters.SHORTENED_URL.fromJson(reader).getId();
+    } catch (IOException e) {
+      return null;
+    } catch (IllegalStateException e) {
       return null;
+    } finally {
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (IOException e) {
+          // Ignore
+        }
+      }
+      if (response != null) {
+        HttpTransport.consume(response);
+      }
     }
   }
 
-  @Override
-  public void parseResponse(HttpResponse response) {
-    String content = readContent(response);
-    ShortenedUrl shortenerResponse = getGson().fromJson(content, ShortenedUrl.class);
-    success(shortenerResponse.getId());
+  private static HttpUriRequest createShortenRequest(String longUrl) {
+    Uri url = Uri.parse(URL_SHORTENER_URL).buildUpon()
+        .appendQueryParameter("key", URL_SHORTENER_API_KEY).build();
+    HttpPost request = new HttpPost(url.toString());
+    String requestString = "{\"longUrl\": \"" + longUrl + "\"}";
+    request.setEntity(HttpTransport.createEntity(requestString, "application/json"));
+    return request;
   }
 
 }
@@ -25,6 +25,8 @@ import android.view.MenuItem;
 import android.view.View;
 
 import org.quizpoll.R;
+import org.quizpoll.net.AuthSession;
+import org.quizpoll.net.SubmissionOutbox;
 import org.quizpoll.util.ActivityHelper;
 
 /**
@@ -40,6 +42,10 @@ public class HomeActivity extends Activity {
     setContentView(R.layout.activity_home);
     ActivityHelper helper = new ActivityHelper(this);
     helper.setupActionBar(null); // No title, app name instead
+    // Send submissions which failed before the app was closed
+    SubmissionOutbox.drain(this);
+    // Login to the broker while user navigates to the first request
+    AuthSession.get(this).warmUp();
   }
 
   @Override
@@ -58,6 +64,9 @@ public class HomeActivity extends Activity {
       case R.id.about:
         startActivity(new Intent(this, AboutActivity.class));
         return true;
+      case R.id.request_metrics:
+        startActivity(new Intent(this, MetricsActivity.class));
+        return true;
         // More menu items to come
       default:
         return super.onOptionsItemSelected(item);
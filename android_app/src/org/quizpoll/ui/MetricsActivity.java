@@ -0,0 +1,85 @@
+/*
+ Copyright 2011 Google Inc. All Rights Reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License');
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS-IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.quizpoll.ui;
+
+import android.app.Activity;
+import android.os.Bundle;
+import android.util.Log;
+import android.view.View;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import org.quizpoll.R;
+import org.quizpoll.net.ImageCache;
+import org.quizpoll.net.NetworkExecutor;
+import org.quizpoll.net.RequestMetrics;
+import org.quizpoll.net.TransferStats;
+import org.quizpoll.util.ActivityHelper;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Debug screen with client-side metrics of network requests.
+ */
+public class MetricsActivity extends Activity {
+
+  private static final String TAG = "MetricsActivity";
+
+  @Override
+  public void onCreate(Bundle savedInstanceState) {
+    super.onCreate(savedInstanceState);
+    setContentView(R.layout.activity_metrics);
+    new ActivityHelper(this).setupActionBar(getString(R.string.request_metrics));
+    showMetrics();
+  }
+
+  public void refreshClicked(View view) {
+    showMetrics();
+  }
+
+  /**
+   * Saves metrics as JSON file, so they can be pulled from the device
+   */
+  public void exportClicked(View view) {
+    try {
+      File file = RequestMetrics.export(this);
+      Toast.makeText(this, getString(R.string.metrics_exported, file.getAbsolutePath()),
+          Toast.LENGTH_LONG).show();
+    } catch (IOException e) {
+      Log.w(TAG, "Cannot export metrics", e);
+      Toast.makeText(this, R.string.metrics_export_failed, Toast.LENGTH_SHORT).show();
+    }
+  }
+
+  public void resetClicked(View view) {
+    RequestMetrics.reset();
+    TransferStats.reset();
+    showMetrics();
+  }
+
+  private void showMetrics() {
+    NetworkExecutor executor = NetworkExecutor.get();
+    StringBuilder sb = new StringBuilder();
+    sb.append("Transfer: ").append(TransferStats.summary()).append('\n');
+    sb.append("Queue depth: ").append(executor.getQueueDepth()).append(", max ")
+        .append(executor.getMaxQueueDepth()).append('\n');
+    sb.append("Images: ").append(ImageCache.get(this).summary()).append("\n\n");
+    sb.append(RequestMetrics.summary());
+    ((TextView) findViewById(R.id.metrics)).setText(sb.toString());
+  }
+}
@@ -29,7 +29,7 @@ import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Vibrator;
-import android.util.SparseBooleanArray;
+import android.text.TextUtils;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
@@ -43,17 +43,19 @@ import android.widget.TextView;
 import org.quizpoll.R;
 import org.quizpoll.data.QuizPollProvider.PollList;
 import org.quizpoll.data.model.Answer;
+import org.quizpoll.data.model.AnswerKey;
+import org.quizpoll.data.model.AnswerSheet;
 import org.quizpoll.data.model.Poll;
+import org.quizpoll.data.model.PollResponse;
 import org.quizpoll.data.model.Question;
 import org.quizpoll.data.model.Question.QuestionType;
 import org.quizpoll.net.AppEngineHelper;
 import org.quizpoll.net.HttpListener;
+import org.quizpoll.net.PollStatusChannel;
 import org.quizpoll.util.ActivityHelper;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
 
 /**
  * Screen for polling. It's launched only from link, so it works like private
@@ -63,12 +65,12 @@ import java.util.TimerTask;
 public class PollActivity extends GoogleAuthActivity {
   @SuppressWarnings("unused")
   private static final String TAG = "PollActivity";
-  // How often to check if there is new question
-  private static final int CHECKING_INTERVAL = 3000;
   private static final int NOTIFICATION_ID = 1;
   private ActivityHelper activityHelper;
   private static Poll poll;
-  private Timer timer;
+  // Answers of this student, kept by the screen as the shared poll is never changed
+  private AnswerSheet answerSheet;
+  private PollStatusChannel statusChannel;
   private Handler handler = new Handler();
   // UI elements for faster access
   LinearLayout questionLayout;
@@ -96,10 +98,15 @@ public class PollActivity extends GoogleAuthActivity {
       // Called from notification
       if (savedInstanceState != null) {
         // if activity was killed in the meantime
-        poll = (Poll) savedInstanceState.getSerializable("poll");
+        poll = savedInstanceState.getParcelable("poll");
+        answerSheet = savedInstanceState.getParcelable("answers");
       }
       if (poll != null) {
         activityHelper.changeTitle(poll.getTitle());
+        if (answerSheet == null) {
+          // New screen for running poll, answered questions are not answered again
+          answerSheet = new AnswerSheet(poll.getQuestions().size());
+        }
       }
     }
     // Button in action bar for sharing quizzes
@@ -119,27 +126,32 @@ public class PollActivity extends GoogleAuthActivity {
     anonymousTextView = (TextView) findViewById(R.id.anonymous);
     answerList = (ListView) findViewById(R.id.answers);
     chooseAllCorrect = (TextView) findViewById(R.id.choose_all_correct);
+    if (poll != null) {
+      // Restored screen shows the known status until it changes
+      showStatus(poll.getCurrentQuestion());
+    }
   }
 
   @Override
   protected void onSaveInstanceState(Bundle outState) {
-    outState.putSerializable("poll", poll);
+    outState.putParcelable("poll", poll);
+    outState.putParcelable("answers", answerSheet);
     super.onSaveInstanceState(outState);
   }
 
   @Override
   protected void onStart() {
     super.onStart();
-    if (poll != null) {
-      poll.setCurrentQuestion(Poll.UNKNOWN);
-      startTimer();
+    if (poll != null && poll.getCurrentQuestion() != Poll.CLOSED) {
+      // Status is kept with its version, the channel waits only for its change
+      startStatusUpdates();
     }
   }
 
   @Override
   protected void onStop() {
-    if (timer != null) {
-      timer.cancel();
+    if (statusChannel != null) {
+      statusChannel.stop();
     }
     super.onStop();
   }
@@ -175,13 +187,14 @@ public class PollActivity extends GoogleAuthActivity {
     // Show special effects (sound, vibration, color)
     specialEffects(correct);
     // Submit response
-    new AppEngineHelper(AppEngineHelper.POLL_SUBMIT, poll, true, this, new HttpListener() {
+    new AppEngineHelper(AppEngineHelper.POLL_SUBMIT, createResponse(), true, this,
+        new HttpListener() {
 
-      @Override
-      public void onSuccess(Object responseData) {
-        waitForInstructor();
-      }
-    });
+          @Override
+          public void onSuccess(Object responseData) {
+            waitForInstructor();
+          }
+        });
   }
 
   /**
@@ -220,66 +233,64 @@ public class PollActivity extends GoogleAuthActivity {
   }
 
   /**
-   * Determine if answer is correct and mark this for later statistics
+   * Grades the answer and records it into the answer sheet
    */
   private boolean isAnswerCorrect() {
-    SparseBooleanArray checkedPositions = answerList.getCheckedItemPositions();
-    boolean correct = true;
-    Question question = poll.getQuestions().get(poll.getCurrentQuestion());
-    for (int i = 0; i < question.getAnswers().size(); i++) {
-      Answer answer = question.getAnswers().get(i);
-      boolean answered = checkedPositions.get(i);
-      if (answer.isCorrect() != answered) {
-        correct = false;
-      }
-      answer.setAnswered(answered);
-    }
-    question.setSuccess(correct);
-    return correct;
+    int index = poll.getCurrentQuestion();
+    Question question = poll.getQuestions().get(index);
+    long selection =
+        AnswerKey.select(question.getAnswers(), answerList.getCheckedItemPositions());
+    return answerSheet.record(index, question.getAnswerKey(), selection);
   }
 
   /**
-   * During polling, app periodically checks the spreadsheet for current
-   * question and it shows it.
+   * Creates response to the current question from the answer sheet
    */
-  private void startTimer() {
-    timer = new Timer();
-    final Runnable tick = new Runnable() {
-
-      @Override
-      public void run() {
-        List<String> arguments = new ArrayList<String>();
-        arguments.add(poll.getDocumentId());
-        arguments.add(poll.getInternalDataSheet());
-        new AppEngineHelper(AppEngineHelper.POLL_STATUS, arguments, false, PollActivity.this,
-            new HttpListener() {
-
-              @Override
-              public void onSuccess(Object responseData) {
-                int questionNumber = (Integer) responseData;
-                if (questionNumber != poll.getCurrentQuestion()) {
-                  poll.setCurrentQuestion(questionNumber);
-                  if (questionNumber == Poll.WAITING_FOR_INSTRUCTOR) {
-                    waitForInstructor();
-                  } else if (questionNumber == Poll.CLOSED) {
-                    closePolling();
-                  } else {
-                    showQuestion();
-                  }
-                }
-              }
-            });
+  private PollResponse createResponse() {
+    int index = poll.getCurrentQuestion();
+    Question question = poll.getQuestions().get(index);
+    long selection = answerSheet.getSelection(index);
+    List<String> answers = new ArrayList<String>();
+    for (Answer answer : question.getAnswers()) {
+      if (AnswerKey.isSelected(selection, answer.getNumber())) {
+        answers.add(String.valueOf(answer.getNumber() + 1));
       }
-    };
+    }
+    return new PollResponse(poll.getDocumentId(), poll.getResponsesSheet(),
+        question.isAnonymous(), index + 1, TextUtils.join(",", answers),
+        answerSheet.isCorrect(index));
+  }
 
-    timer.schedule(new TimerTask() {
+  /**
+   * During polling, app waits for changes of current question pushed by the
+   * server and it shows it.
+   */
+  private void startStatusUpdates() {
+    if (statusChannel != null) {
+      statusChannel.stop();
+    }
+    statusChannel = new PollStatusChannel(this, poll, new PollStatusChannel.Listener() {
 
       @Override
-      public void run() {
-        runOnUiThread(tick);
+      public void onStatusChanged(int questionNumber) {
+        poll.setCurrentQuestion(questionNumber);
+        showStatus(questionNumber);
       }
+    });
+    statusChannel.start();
+  }
 
-    }, 0, CHECKING_INTERVAL);
+  /**
+   * Shows screen for status of the poll, nothing is shown for unknown status
+   */
+  private void showStatus(int questionNumber) {
+    if (questionNumber == Poll.WAITING_FOR_INSTRUCTOR) {
+      waitForInstructor();
+    } else if (questionNumber == Poll.CLOSED) {
+      closePolling();
+    } else if (questionNumber != Poll.UNKNOWN) {
+      showQuestion();
+    }
   }
 
   /**
@@ -301,10 +312,9 @@ public class PollActivity extends GoogleAuthActivity {
     waitingProgress.setVisibility(View.GONE);
     statusTextView.setText(R.string.polling_is_closed);
     hideNotification();
-    if (timer != null) {
-      timer.cancel();
+    if (statusChannel != null) {
+      statusChannel.stop();
     }
-    timer = null;
   }
 
   /**
@@ -329,7 +339,7 @@ public class PollActivity extends GoogleAuthActivity {
     }
     // Multiple choice questions are radio buttons, Multiple select questions
     // are checkboxes
-    if (question.getType() == QuestionType.SINGLE_CHOICE) {
+    if (questionType == QuestionType.SINGLE_CHOICE) {
       answerList.setChoiceMode(ListView.CHOICE_MODE_SINGLE);
       answerList.setAdapter(new ArrayAdapter<String>(this,
           R.layout.list_item_single_choice, answerTexts));
@@ -387,9 +397,10 @@ public class PollActivity extends GoogleAuthActivity {
           public void onSuccess(Object responseData) {
             poll = (Poll) responseData;
             poll.setCurrentQuestion(Poll.UNKNOWN);
+            answerSheet = new AnswerSheet(poll.getQuestions().size());
             activityHelper.changeTitle(poll.getTitle());
             showNotification();
-            startTimer();
+            startStatusUpdates();
             savePollAccess();
           }
         });
@@ -30,6 +30,8 @@ import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
+import android.widget.AbsListView.OnScrollListener;
 import android.widget.AdapterView;
 import android.widget.AdapterView.OnItemClickListener;
 import android.widget.ArrayAdapter;
@@ -39,6 +41,7 @@ import android.widget.TextView;
 
 import org.quizpoll.R;
 import org.quizpoll.data.model.DocsEntry;
+import org.quizpoll.data.model.DocsPage;
 import org.quizpoll.net.AppEngineHelper;
 import org.quizpoll.net.DocsHelper;
 import org.quizpoll.net.HttpListener;
@@ -59,6 +62,8 @@ public class QuizBrowserActivity extends GoogleAuthActivity implements OnItemCli
   public static final String EXTRA_TITLE = "org.quizpoll.Title";
   static final String INFO_URL = "http://quiz-n-poll.appspot.com";
   static final int DIALOG_CREATE_GAME = 0;
+  // Next page is fetched when user scrolls this close to the end of list
+  private static final int PREFETCH_THRESHOLD = 20;
 
   // ID of shared collection in Docs containing all quizzes
   public static final String QUIZZES_SHARED_COLLECTION =
@@ -66,6 +71,10 @@ public class QuizBrowserActivity extends GoogleAuthActivity implements OnItemCli
 
   private ArrayList<DocsEntry> docsEntries;
   private boolean privateQuizGames = false;
+  private DocsListAdapter adapter;
+  // Paging of private quizzes
+  private String nextPageUrl;
+  private boolean fetchingPage = false;
 
   @SuppressWarnings("unchecked")
   @Override
@@ -80,7 +89,7 @@ public class QuizBrowserActivity extends GoogleAuthActivity implements OnItemCli
       privateQuizGames = true;
     }
     if (privateQuizGames) {
-      fetchPrivateDocList();
+      fetchPrivateDocList(null);
     } else {
       fetchCollectionDocList(collectionId);
       helper.addActionButtonCompat(R.drawable.ic_title_private, new View.OnClickListener() {
@@ -162,24 +171,79 @@ public class QuizBrowserActivity extends GoogleAuthActivity implements OnItemCli
   }
 
   /**
-   * Fetch private quizzes
+   * Fetch page of private quizzes, null URL is the first page
    */
-  private void fetchPrivateDocList() {
-    new DocsHelper(DocsHelper.MY_DOCUMENTS, null, true, QuizBrowserActivity.this,
+  private void fetchPrivateDocList(String pageUrl) {
+    fetchingPage = true;
+    new DocsHelper(DocsHelper.MY_DOCUMENTS, pageUrl, pageUrl == null, QuizBrowserActivity.this,
         new HttpListener() {
 
-          @SuppressWarnings("unchecked")
           @Override
           public void onSuccess(Object responseData) {
-            docsEntries = (ArrayList<DocsEntry>) responseData;
-            ListView list = (ListView) findViewById(R.id.quiz_list);
-            list.setAdapter(new DocsListAdapter(QuizBrowserActivity.this, R.layout.list_item_icon,
-                docsEntries));
-            list.setOnItemClickListener(QuizBrowserActivity.this);
+            fetchingPage = false;
+            DocsPage page = (DocsPage) responseData;
+            nextPageUrl = page.getNextPageUrl();
+            if (adapter == null) {
+              docsEntries = new ArrayList<DocsEntry>(page.getEntries());
+              showDocList();
+              // Fetch next pages as user scrolls
+              ListView list = (ListView) findViewById(R.id.quiz_list);
+              list.setOnScrollListener(new OnScrollListener() {
+
+                @Override
+                public void onScrollStateChanged(AbsListView view, int scrollState) {
+                  // Ignore
+                }
+
+                @Override
+                public void onScroll(AbsListView view, int firstVisibleItem,
+                    int visibleItemCount, int totalItemCount) {
+                  if (firstVisibleItem + visibleItemCount
+                      >= totalItemCount - PREFETCH_THRESHOLD) {
+                    fetchNextPage();
+                  }
+                }
+              });
+            } else {
+              adapter.setNotifyOnChange(false);
+              for (DocsEntry entry : page.getEntries()) {
+                adapter.add(entry);
+              }
+              adapter.notifyDataSetChanged();
+            }
+            if (page.getEntries().size() < PREFETCH_THRESHOLD) {
+              // Page had only few quizzes, list is still short
+              fetchNextPage();
+            }
+          }
+
+          @Override
+          public void onFailure(int errorCode) {
+            // Next scroll tries the page again
+            fetchingPage = false;
           }
         });
   }
 
+  /**
+   * Starts fetching of next page of private quizzes if there is any
+   */
+  private void fetchNextPage() {
+    if (nextPageUrl != null && !fetchingPage) {
+      fetchPrivateDocList(nextPageUrl);
+    }
+  }
+
+  /**
+   * Shows fetched documents in the list
+   */
+  private void showDocList() {
+    ListView list = (ListView) findViewById(R.id.quiz_list);
+    adapter = new DocsListAdapter(QuizBrowserActivity.this, R.layout.list_item_icon, docsEntries);
+    list.setAdapter(adapter);
+    list.setOnItemClickListener(QuizBrowserActivity.this);
+  }
+
   /**
    * Fetch documents from some collection
    */
@@ -192,10 +256,7 @@ public class QuizBrowserActivity extends GoogleAuthActivity implements OnItemCli
           public void onSuccess(Object responseData) {
             docsEntries = (ArrayList<DocsEntry>) responseData;
             Collections.sort(docsEntries);
-            ListView list = (ListView) findViewById(R.id.quiz_list);
-            list.setAdapter(new DocsListAdapter(QuizBrowserActivity.this, R.layout.list_item_icon,
-                docsEntries));
-            list.setOnItemClickListener(QuizBrowserActivity.this);
+            showDocList();
           }
         });
   }
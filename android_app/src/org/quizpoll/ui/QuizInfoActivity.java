@@ -24,16 +24,20 @@ import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewGroup.LayoutParams;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 
 import org.quizpoll.R;
+import org.quizpoll.data.QuizSessionStore;
 import org.quizpoll.data.model.Quiz;
 import org.quizpoll.net.AppEngineHelper;
 import org.quizpoll.net.HttpHelper;
 import org.quizpoll.net.HttpListener;
+import org.quizpoll.net.ImageCache;
 import org.quizpoll.net.ImageDownloadHelper;
+import org.quizpoll.net.ImageRequest;
 import org.quizpoll.util.ActivityHelper;
 
 /**
@@ -62,7 +66,7 @@ public class QuizInfoActivity extends GoogleAuthActivity {
     }
     helper = new ActivityHelper(QuizInfoActivity.this);
     helper.setupActionBar(getString(R.string.quiz_game_detail));
-    fetchQuiz(docId);
+    loadQuiz(docId);
     // Button in action bar for sharing quizzes
     helper.addActionButtonCompat(R.drawable.ic_title_share, new View.OnClickListener() {
 
@@ -98,7 +102,7 @@ public class QuizInfoActivity extends GoogleAuthActivity {
   public void startClicked(View view) {
     Intent intent = new Intent(QuizInfoActivity.this,
         QuizPlayerActivity.class);
-    intent.putExtra(QuizPlayerActivity.EXTRA_QUIZ, quiz);
+    intent.putExtra(QuizPlayerActivity.EXTRA_DOCUMENT_ID, quiz.getDocumentId());
     startActivity(intent);
     finish();
   }
@@ -115,29 +119,96 @@ public class QuizInfoActivity extends GoogleAuthActivity {
   }
 
   /**
-   * Fetch worksheets of selected spreadsheet
+   * Shows stored quiz immediately and revalidates it in background, quiz
+   * which was never downloaded is fetched with progress dialog
    */
-  private void fetchQuiz(final String docId) {
-    new AppEngineHelper(AppEngineHelper.QUIZ, docId, true, this,
+  private void loadQuiz(final String docId) {
+    QuizSessionStore.get(this).load(docId, new QuizSessionStore.Callback() {
+
+      @Override
+      public void onLoaded(Quiz storedQuiz) {
+        if (isFinishing()) {
+          return;
+        }
+        if (storedQuiz != null) {
+          showQuiz(storedQuiz);
+        }
+        fetchQuiz(docId, storedQuiz == null);
+      }
+    });
+  }
+
+  /**
+   * Fetch worksheets of selected spreadsheet. Fetched quiz is stored in
+   * background, UI is updated only when it was changed since it was stored.
+   */
+  private void fetchQuiz(final String docId, boolean showDialog) {
+    new AppEngineHelper(AppEngineHelper.QUIZ, docId, showDialog, this,
+        new HttpListener() {
+
+          @Override
+          public void onSuccess(Object responseData) {
+            showQuiz((Quiz) responseData);
+          }
+
+          @Override
+          public boolean onNotModified() {
+            runOnUiThread(new Runnable() {
+
+              @Override
+              public void run() {
+                // Stored quiz can be still loading, the fetch put it into memory
+                Quiz storedQuiz = QuizSessionStore.get(QuizInfoActivity.this).getCached(docId);
+                if (quiz == null && storedQuiz != null) {
+                  showQuiz(storedQuiz);
+                }
+              }
+            });
+            return false;
+          }
+        }) {
+
+      @Override
+      protected void onError(int statusCode) {
+        // Stored quiz is shown, so being offline is not worth a message
+        if (statusCode != ERROR_CONNECTION || quiz == null) {
+          super.onError(statusCode);
+        }
+      }
+    };
+  }
+
+  /**
+   * Shows title, description and image of the quiz
+   */
+  private void showQuiz(Quiz quiz) {
+    this.quiz = quiz;
+    helper.changeTitle(quiz.getTitle());
+    ((TextView) findViewById(R.id.quiz_description)).setText(quiz.getDescription());
+    ((LinearLayout) findViewById(R.id.quiz_info)).setVisibility(View.VISIBLE);
+    showImage();
+  }
+
+  /**
+   * Shows quiz image from memory cache or downloads it scaled to the view
+   */
+  private void showImage() {
+    final ImageView imageView = (ImageView) findViewById(R.id.quiz_image);
+    LayoutParams params = imageView.getLayoutParams();
+    ImageRequest image = new ImageRequest(quiz.getImage(), params.width, params.height);
+    Bitmap cached = ImageCache.get(this).getBitmap(image);
+    if (cached != null) {
+      imageView.setImageBitmap(cached);
+      return;
+    }
+    new ImageDownloadHelper(HttpHelper.SINGLE_MESSAGE_TYPE, image, false,
+        QuizInfoActivity.this,
         new HttpListener() {
 
           @Override
           public void onSuccess(Object responseData) {
-            quiz = (Quiz) responseData;
-            helper.changeTitle(quiz.getTitle());
-            ((TextView) findViewById(R.id.quiz_description)).setText(quiz.getDescription());
-            ((LinearLayout) findViewById(R.id.quiz_info)).setVisibility(View.VISIBLE);
-            // Download image
-            new ImageDownloadHelper(HttpHelper.SINGLE_MESSAGE_TYPE, quiz.getImage(), false,
-                QuizInfoActivity.this,
-                new HttpListener() {
-
-                  @Override
-                  public void onSuccess(Object responseData) {
-                    Bitmap bitmap = (Bitmap) responseData;
-                    ((ImageView) findViewById(R.id.quiz_image)).setImageBitmap(bitmap);
-                  }
-                });
+            Bitmap bitmap = (Bitmap) responseData;
+            imageView.setImageBitmap(bitmap);
           }
         });
   }
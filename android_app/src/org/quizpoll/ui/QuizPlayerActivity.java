@@ -23,7 +23,6 @@ import android.media.MediaPlayer;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Vibrator;
-import android.util.SparseBooleanArray;
 import android.view.View;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
@@ -32,10 +31,14 @@ import android.widget.RelativeLayout;
 import android.widget.TextView;
 
 import org.quizpoll.R;
+import org.quizpoll.data.QuizSessionStore;
 import org.quizpoll.data.model.Answer;
+import org.quizpoll.data.model.AnswerKey;
+import org.quizpoll.data.model.AnswerSheet;
 import org.quizpoll.data.model.Question;
 import org.quizpoll.data.model.Question.QuestionType;
 import org.quizpoll.data.model.Quiz;
+import org.quizpoll.data.model.QuizResult;
 import org.quizpoll.net.AppEngineHelper;
 import org.quizpoll.net.HttpListener;
 import org.quizpoll.util.ActivityHelper;
@@ -53,13 +56,15 @@ public class QuizPlayerActivity extends GoogleAuthActivity {
   @SuppressWarnings("unused")
   private static final String TAG = "QuizPlayerActivity";
 
-  public static final String EXTRA_QUIZ = "org.quizpoll.Quiz";
+  // Quiz is taken from QuizSessionStore
+  public static final String EXTRA_DOCUMENT_ID = "org.quizpoll.DocumentId";
   // Constants defining rules of the game
   public static final int SECONDS_PER_QUESTION = 120;
   public static final int MAX_QUESTIONS = 10;
   public static final int COST_OF_WRONG_ANSWER = 100;
 
   private Quiz quiz;
+  private AnswerSheet answerSheet;
   private ActivityHelper activityHelper;
   private int currentQuestion = -1; // Next question after start will be 0
   private int remainingTime;
@@ -71,14 +76,41 @@ public class QuizPlayerActivity extends GoogleAuthActivity {
   protected void onCreate(Bundle savedInstanceState) {
     super.onCreate(savedInstanceState);
     setContentView(R.layout.activity_quiz_player);
-    quiz = (Quiz) getIntent().getSerializableExtra(EXTRA_QUIZ);
+    final String documentId = getIntent().getStringExtra(EXTRA_DOCUMENT_ID);
     activityHelper = new ActivityHelper(this);
     activityHelper.setupActionBar(""); // Empty title, it is changed in
                                        // showQuestion
     setVolumeControlStream(AudioManager.STREAM_MUSIC);
+    handler = new Handler();
+    QuizSessionStore.get(this).load(documentId, new QuizSessionStore.Callback() {
+
+      @Override
+      public void onLoaded(Quiz storedQuiz) {
+        if (isFinishing()) {
+          return;
+        }
+        if (storedQuiz == null) {
+          // Quiz was evicted while the game was in background, load it again
+          Intent intent = new Intent(QuizPlayerActivity.this, QuizInfoActivity.class);
+          intent.putExtra(QuizInfoActivity.EXTRA_DOC_ID, documentId);
+          startActivity(intent);
+          finish();
+          return;
+        }
+        startGame(storedQuiz);
+      }
+    });
+  }
+
+  /**
+   * Starts the game with loaded quiz
+   */
+  private void startGame(Quiz storedQuiz) {
+    // Stored quiz is shared, the game filters and shuffles its own copy
+    quiz = new Quiz(storedQuiz);
     randomizeQuestions();
+    answerSheet = new AnswerSheet(quiz.getQuestions().size());
     showNextQuestion();
-    handler = new Handler();
   }
 
   @Override
@@ -93,6 +125,10 @@ public class QuizPlayerActivity extends GoogleAuthActivity {
    * Submit answer button was clicked
    */
   public void submitClicked(View view) {
+    if (quiz == null) {
+      // Quiz is still loading
+      return;
+    }
     // Stop timer
     if (timer != null) {
       timer.cancel();
@@ -123,23 +159,13 @@ public class QuizPlayerActivity extends GoogleAuthActivity {
   }
 
   /**
-   * Determine if answer is correct and mark this for later statistics
+   * Grades the answer and records it for later statistics
    */
   private boolean isAnswerCorrect() {
-    SparseBooleanArray checkedPositions = ((ListView) findViewById(R.id.answers))
-        .getCheckedItemPositions();
-    boolean correct = true;
     Question question = quiz.getQuestions().get(currentQuestion);
-    for (int i = 0; i < question.getAnswers().size(); i++) {
-      Answer answer = question.getAnswers().get(i);
-      boolean answered = checkedPositions.get(i);
-      if (answer.isCorrect() != answered) {
-        correct = false;
-      }
-      answer.setAnswered(answered);
-    }
-    question.setSuccess(correct);
-    return correct;
+    long selection = AnswerKey.select(question.getAnswers(),
+        ((ListView) findViewById(R.id.answers)).getCheckedItemPositions());
+    return answerSheet.record(currentQuestion, question.getAnswerKey(), selection);
   }
 
   /**
@@ -166,7 +192,7 @@ public class QuizPlayerActivity extends GoogleAuthActivity {
     ListView answerList = (ListView) findViewById(R.id.answers);
     // Multiple choice questions are radio buttons, Multiple select questions
     // are checkboxes
-    if (question.getType() == QuestionType.SINGLE_CHOICE) {
+    if (questionType == QuestionType.SINGLE_CHOICE) {
       answerList.setChoiceMode(ListView.CHOICE_MODE_SINGLE);
       answerList.setAdapter(new ArrayAdapter<String>(this,
           R.layout.list_item_single_choice, answerTexts));
@@ -277,8 +303,8 @@ public class QuizPlayerActivity extends GoogleAuthActivity {
     // Save score
     quiz.setScore(score);
 
-    new AppEngineHelper(AppEngineHelper.QUIZ_SUBMIT, quiz, true, this,
-        new HttpListener() {
+    new AppEngineHelper(AppEngineHelper.QUIZ_SUBMIT, new QuizResult(quiz, answerSheet), true,
+        this, new HttpListener() {
 
           @Override
           public void onSuccess(Object responseData) {
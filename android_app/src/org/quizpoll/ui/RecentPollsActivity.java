@@ -40,6 +40,7 @@ import android.widget.Toast;
 import org.quizpoll.R;
 import org.quizpoll.data.QuizPollProvider.PollList;
 import org.quizpoll.net.AppEngineHelper;
+import org.quizpoll.net.UrlShortenerHelper;
 import org.quizpoll.util.ActivityHelper;
 
 import java.util.ArrayList;
@@ -57,6 +58,8 @@ public class RecentPollsActivity extends GoogleAuthActivity {
   // Google Goggles use same API as Zxing's QR Code scanner, it works for both
   static final String GOGGLES_INTENT = "com.google.zxing.client.android.SCAN";
   static final String GOGGLES_RESULT = "SCAN_RESULT";
+  // Number of recent polls whose share URLs are shortened in advance
+  static final int SHORTEN_IN_ADVANCE = 5;
 
   @SuppressWarnings("unchecked")
   @Override
@@ -129,6 +132,7 @@ public class RecentPollsActivity extends GoogleAuthActivity {
 
   @Override
   protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+    super.onActivityResult(requestCode, resultCode, data);
     if (requestCode == SCAN_QR && resultCode == RESULT_OK) {
       if (resultCode == RESULT_OK) {
         String url = data.getStringExtra(GOGGLES_RESULT);
@@ -187,6 +191,7 @@ public class RecentPollsActivity extends GoogleAuthActivity {
         findViewById(R.id.no_recent_polls).setVisibility(View.VISIBLE);
         findViewById(R.id.poll_list).setVisibility(View.GONE);
       } else {
+        shortenShareUrls(entries);
         ListView list = ((ListView) findViewById(R.id.poll_list));
         list.setVisibility(View.VISIBLE);
         findViewById(R.id.no_recent_polls).setVisibility(View.GONE);
@@ -209,6 +214,19 @@ public class RecentPollsActivity extends GoogleAuthActivity {
 
   }
 
+  /**
+   * Prepares shortened URLs of the most recent polls for sharing
+   */
+  private void shortenShareUrls(List<RecentPollsEntry> entries) {
+    List<String> urls = new ArrayList<String>();
+    for (int i = 0; i < entries.size() && i < SHORTEN_IN_ADVANCE; i++) {
+      Uri url = Uri.parse(AppEngineHelper.BROKER_URL + "/poll/").buildUpon()
+          .appendPath(entries.get(i).getDocumentId()).build();
+      urls.add(url.toString());
+    }
+    UrlShortenerHelper.warmUp(this, urls);
+  }
+
   class RecentPollsEntry {
     private final String title;
     private final String documentId;
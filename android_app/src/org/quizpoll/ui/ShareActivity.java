@@ -44,6 +44,7 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import org.quizpoll.R;
+import org.quizpoll.data.ShortUrlStore;
 import org.quizpoll.net.HttpHelper;
 import org.quizpoll.net.HttpListener;
 import org.quizpoll.net.UrlShortenerHelper;
@@ -215,6 +216,12 @@ public class ShareActivity extends Activity {
    * stickers. It also makes NFC and QR scanning much faster.
    */
   private void shortenUrl(final String url) {
+    String cachedUrl = ShortUrlStore.get(url, this);
+    if (cachedUrl != null) {
+      // Shortened before, no need to wait for network
+      startSharing(cachedUrl);
+      return;
+    }
     new UrlShortenerHelper(HttpHelper.SINGLE_MESSAGE_TYPE, url, true, this, new HttpListener() {
 
       @Override
@@ -0,0 +1,101 @@
+/*
+ Copyright 2011 Google Inc. All Rights Reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License');
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS-IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.quizpoll.data;
+
+import android.database.Cursor;
+import android.test.ProviderTestCase2;
+
+import org.quizpoll.data.QuizPollProvider.Quizzes;
+import org.quizpoll.data.model.ModelFixtures;
+import org.quizpoll.data.model.Question;
+import org.quizpoll.data.model.Quiz;
+
+/**
+ * Tests of QuizStore against an isolated QuizPollProvider database
+ */
+public class QuizStoreTest extends ProviderTestCase2<QuizPollProvider> {
+
+  public QuizStoreTest() {
+    super(QuizPollProvider.class, QuizPollProvider.AUTHORITY);
+  }
+
+  public void testGetMissingQuiz() {
+    assertNull(QuizStore.get("doc-quiz", getMockContext()));
+  }
+
+  public void testPutReportsChangedContent() {
+    assertTrue(QuizStore.put(createQuiz("doc-quiz", "Capitals"), null, getMockContext()));
+    // Same content downloaded again
+    assertFalse(QuizStore.put(createQuiz("doc-quiz", "Capitals"), null, getMockContext()));
+    assertTrue(QuizStore.put(createQuiz("doc-quiz", "Capitals of Europe"), null,
+        getMockContext()));
+    assertEquals(1, countStoredQuizzes());
+  }
+
+  public void testEtagIsStoredWithQuiz() {
+    assertNull(QuizStore.getEtag("doc-quiz", getMockContext()));
+    QuizStore.put(createQuiz("doc-quiz", "Capitals"), "\"v1\"", getMockContext());
+    assertEquals("\"v1\"", QuizStore.getEtag("doc-quiz", getMockContext()));
+    // Server sent new ETag for the same content
+    assertFalse(QuizStore.put(createQuiz("doc-quiz", "Capitals"), "\"v2\"", getMockContext()));
+    assertEquals("\"v2\"", QuizStore.getEtag("doc-quiz", getMockContext()));
+    // Revalidated quiz keeps its ETag
+    QuizStore.touch("doc-quiz", getMockContext());
+    assertEquals("\"v2\"", QuizStore.getEtag("doc-quiz", getMockContext()));
+  }
+
+  public void testGetReturnsStoredQuiz() {
+    QuizStore.put(createQuiz("doc-quiz", "Capitals"), null, getMockContext());
+
+    Quiz quiz = QuizStore.get("doc-quiz", getMockContext());
+    assertEquals("Capitals", quiz.getTitle());
+    assertEquals("doc-quiz", quiz.getDocumentId());
+    assertEquals(ModelFixtures.LEADERBOARD_SHEET, quiz.getLeaderboardSheet());
+    assertEquals(ModelFixtures.STATISTICS_SHEET, quiz.getStatisticsSheet());
+    assertEquals(1, quiz.getQuestions().size());
+    Question question = quiz.getQuestions().get(0);
+    assertEquals("What is the answer to question 0?", question.getQuestionText());
+    assertEquals(2, question.getAnswers().size());
+    assertTrue(question.getAnswers().get(0).isCorrect());
+    assertFalse(question.getAnswers().get(1).isCorrect());
+  }
+
+  public void testNumberOfStoredQuizzesIsLimited() {
+    for (int i = 0; i <= Quizzes.MAX_STORED; i++) {
+      QuizStore.put(createQuiz("doc-" + i, "Quiz " + i), null, getMockContext());
+    }
+    assertEquals(Quizzes.MAX_STORED, countStoredQuizzes());
+    // Oldest one is deleted, even when quizzes were stored in the same millisecond
+    assertNull(QuizStore.get("doc-0", getMockContext()));
+    assertNotNull(QuizStore.get("doc-" + Quizzes.MAX_STORED, getMockContext()));
+  }
+
+  private int countStoredQuizzes() {
+    Cursor cursor = getMockContentResolver().query(Quizzes.CONTENT_URI, new String[] {
+      Quizzes._ID
+    }, null, null, null);
+    try {
+      return cursor.getCount();
+    } finally {
+      cursor.close();
+    }
+  }
+
+  private static Quiz createQuiz(String documentId, String title) {
+    return ModelFixtures.createQuiz(documentId, title, 1, 2);
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ Copyright 2011 Google Inc. All Rights Reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License');
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS-IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.quizpoll.data.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Models shared by tests. In generated quizzes answer j of question i is the
+ * only correct one if j == i % answer count, so all questions are single
+ * choice.
+ */
+public final class ModelFixtures {
+
+  public static final String IMAGE = "http://example.com/map.png";
+  public static final String LEADERBOARD_SHEET = "od6";
+  public static final String STATISTICS_SHEET = "od7";
+
+  /**
+   * Quiz with generated questions and answers
+   */
+  public static Quiz createQuiz(String documentId, String title, int questionCount,
+      int answerCount) {
+    return new Quiz(title, "Description of " + title, IMAGE,
+        createQuestions(questionCount, answerCount), LEADERBOARD_SHEET, documentId,
+        STATISTICS_SHEET);
+  }
+
+  /**
+   * Modifiable list of questions numbered from 0
+   */
+  public static List<Question> createQuestions(int questionCount, int answerCount) {
+    List<Question> questions = new ArrayList<Question>(questionCount);
+    for (int i = 0; i < questionCount; i++) {
+      List<Answer> answers = new ArrayList<Answer>(answerCount);
+      for (int j = 0; j < answerCount; j++) {
+        answers.add(new Answer("Answer " + j + " of question " + i, j == i % answerCount, j));
+      }
+      questions.add(new Question("What is the answer to question " + i + "?", answers, i));
+    }
+    return questions;
+  }
+
+  /**
+   * Single choice question followed by anonymous multiple choice question
+   * with null answer text and the highest answer number
+   */
+  public static List<Question> createEdgeCaseQuestions() {
+    List<Question> questions = new ArrayList<Question>();
+    List<Answer> answers = new ArrayList<Answer>();
+    answers.add(new Answer("Bratislava", true, 0));
+    answers.add(new Answer("Kosice", false, 1));
+    questions.add(new Question("Capital of Slovakia?", answers, 3));
+    answers = new ArrayList<Answer>();
+    answers.add(new Answer("Brno", true, 0));
+    answers.add(new Answer(null, true, AnswerKey.MAX_ANSWERS - 1));
+    Question multiple = new Question("Pick all", answers, 300);
+    multiple.setAnonymous(true);
+    questions.add(multiple);
+    return questions;
+  }
+
+  /**
+   * Leaderboard sorted by score, from 10 points per entry down to negative
+   */
+  public static List<LeaderboardEntry> createLeaderboard(int count) {
+    List<LeaderboardEntry> entries = new ArrayList<LeaderboardEntry>(count);
+    for (int i = 0; i < count; i++) {
+      entries.add(new LeaderboardEntry((count / 2 - i) * 10, "student" + i));
+    }
+    return entries;
+  }
+
+  /**
+   * Collection followed by quizzes
+   */
+  public static List<DocsEntry> createDocuments(int count) {
+    List<DocsEntry> entries = new ArrayList<DocsEntry>(count);
+    for (int i = 0; i < count; i++) {
+      entries.add(new DocsEntry(i == 0 ? DocsEntry.COLLECTION : DocsEntry.QUIZ,
+          "Document " + i, "doc-" + i));
+    }
+    return entries;
+  }
+
+  private ModelFixtures() {
+  }
+}
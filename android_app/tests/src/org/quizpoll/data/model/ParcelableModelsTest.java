@@ -0,0 +1,139 @@
+/*
+ Copyright 2011 Google Inc. All Rights Reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License');
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS-IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.quizpoll.data.model;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+
+/**
+ * Writes models to a parcel and reads them back, as activities do when their
+ * state is saved and restored
+ */
+public class ParcelableModelsTest extends TestCase {
+
+  public void testQuiz() {
+    Quiz quiz = new Quiz("Capitals", null, ModelFixtures.IMAGE,
+        ModelFixtures.createEdgeCaseQuestions(), "od6", "doc-quiz", "od7");
+    quiz.setScore(-150);
+
+    Quiz restored = roundTrip(quiz, Quiz.CREATOR);
+    assertEquals("Capitals", restored.getTitle());
+    assertNull(restored.getDescription());
+    assertEquals("http://example.com/map.png", restored.getImage());
+    assertEquals("od6", restored.getLeaderboardSheet());
+    assertEquals("doc-quiz", restored.getDocumentId());
+    assertEquals("od7", restored.getStatisticsSheet());
+    assertEquals(-150, restored.getScore());
+    assertQuestions(quiz.getQuestions(), restored.getQuestions());
+  }
+
+  public void testPoll() {
+    Poll poll =
+        new Poll("Lecture 1", ModelFixtures.createEdgeCaseQuestions(), "od6", "od7", "doc-poll");
+    poll.setCurrentQuestion(1);
+    poll.setStatusVersion("\"v42\"");
+
+    Poll restored = roundTrip(poll, Poll.CREATOR);
+    assertEquals("Lecture 1", restored.getTitle());
+    assertEquals("od6", restored.getInternalDataSheet());
+    assertEquals("od7", restored.getResponsesSheet());
+    assertEquals("doc-poll", restored.getDocumentId());
+    // Restored poll continues from the status it had, not from UNKNOWN
+    assertEquals(1, restored.getCurrentQuestion());
+    assertEquals("\"v42\"", restored.getStatusVersion());
+    assertQuestions(poll.getQuestions(), restored.getQuestions());
+  }
+
+  public void testPollWithUnknownStatus() {
+    Poll poll =
+        new Poll("Lecture 1", ModelFixtures.createEdgeCaseQuestions(), "od6", "od7", "doc-poll");
+
+    Poll restored = roundTrip(poll, Poll.CREATOR);
+    assertEquals(Poll.UNKNOWN, restored.getCurrentQuestion());
+    assertNull(restored.getStatusVersion());
+  }
+
+  public void testAnswerSheet() {
+    List<Question> questions = ModelFixtures.createEdgeCaseQuestions();
+    AnswerSheet sheet = new AnswerSheet(3);
+    sheet.record(0, questions.get(0).getAnswerKey(), AnswerKey.bit(0));
+    sheet.record(1, questions.get(1).getAnswerKey(), AnswerKey.bit(0));
+
+    AnswerSheet restored = roundTrip(sheet, AnswerSheet.CREATOR);
+    assertEquals(3, restored.size());
+    assertTrue(restored.isAnswered(0));
+    assertTrue(restored.isCorrect(0));
+    assertEquals(AnswerKey.bit(0), restored.getSelection(0));
+    assertTrue(restored.isAnswered(1));
+    assertFalse(restored.isCorrect(1));
+    assertEquals(AnswerKey.bit(0), restored.getSelection(1));
+    assertFalse(restored.isAnswered(2));
+    assertEquals(0, restored.getSelection(2));
+  }
+
+  public void testDocsEntry() {
+    DocsEntry restored = roundTrip(new DocsEntry(DocsEntry.QUIZ, "Capitals", "doc-quiz"),
+        DocsEntry.CREATOR);
+    assertEquals(DocsEntry.QUIZ, restored.getType());
+    assertEquals("Capitals", restored.getTitle());
+    assertEquals("doc-quiz", restored.getId());
+  }
+
+  public void testLeaderboardEntry() {
+    LeaderboardEntry restored = roundTrip(new LeaderboardEntry(-5, "alice"),
+        LeaderboardEntry.CREATOR);
+    assertEquals(-5, restored.getScore());
+    assertEquals("alice", restored.getLdap());
+  }
+
+  private static void assertQuestions(List<Question> expected, List<Question> actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      Question question = expected.get(i);
+      Question restored = actual.get(i);
+      assertEquals(question.getQuestionText(), restored.getQuestionText());
+      assertEquals(question.getNumber(), restored.getNumber());
+      assertEquals(question.isAnonymous(), restored.isAnonymous());
+      assertEquals(question.getType(), restored.getType());
+      assertEquals(question.getAnswerKey().getCorrectMask(),
+          restored.getAnswerKey().getCorrectMask());
+      assertEquals(question.getAnswers().size(), restored.getAnswers().size());
+      for (int j = 0; j < question.getAnswers().size(); j++) {
+        Answer answer = question.getAnswers().get(j);
+        Answer restoredAnswer = restored.getAnswers().get(j);
+        assertEquals(answer.getAnswerText(), restoredAnswer.getAnswerText());
+        assertEquals(answer.isCorrect(), restoredAnswer.isCorrect());
+        assertEquals(answer.getNumber(), restoredAnswer.getNumber());
+      }
+    }
+  }
+
+  private static <T extends Parcelable> T roundTrip(T model, Parcelable.Creator<T> creator) {
+    Parcel parcel = Parcel.obtain();
+    try {
+      model.writeToParcel(parcel, 0);
+      parcel.setDataPosition(0);
+      return creator.createFromParcel(parcel);
+    } finally {
+      parcel.recycle();
+    }
+  }
+}
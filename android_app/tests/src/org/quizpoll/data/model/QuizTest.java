@@ -0,0 +1,87 @@
+/*
+ Copyright 2011 Google Inc. All Rights Reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License');
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS-IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.quizpoll.data.model;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests of the game copy of a quiz, which is filtered and shuffled while the
+ * stored quiz is shared
+ */
+public class QuizTest extends TestCase {
+
+  private static final int QUESTION_COUNT = 10;
+  private static final int ANSWER_COUNT = 8;
+
+  public void testCopyCanBeShuffledAndFiltered() {
+    Quiz stored = createQuiz();
+    List<Question> storedQuestions = new ArrayList<Question>(stored.getQuestions());
+
+    Quiz copy = new Quiz(stored);
+    // Reversing instead of shuffling, so the change is always visible
+    List<Question> questions = copy.getQuestions();
+    Collections.reverse(questions);
+    copy.setQuestions(questions.subList(0, 3));
+    for (Question question : copy.getQuestions()) {
+      Collections.reverse(question.getAnswers());
+    }
+
+    assertEquals(3, copy.getQuestions().size());
+    assertEquals(QUESTION_COUNT, stored.getQuestions().size());
+    for (int i = 0; i < QUESTION_COUNT; i++) {
+      Question question = stored.getQuestions().get(i);
+      assertSame(storedQuestions.get(i), question);
+      assertEquals(i, question.getNumber());
+      assertEquals(ANSWER_COUNT, question.getAnswers().size());
+      for (int j = 0; j < ANSWER_COUNT; j++) {
+        assertEquals(j, question.getAnswers().get(j).getNumber());
+      }
+    }
+  }
+
+  public void testCopyKeepsAnswerKey() {
+    Quiz stored = createQuiz();
+    Quiz copy = new Quiz(stored);
+    for (int i = 0; i < QUESTION_COUNT; i++) {
+      Question question = stored.getQuestions().get(i);
+      Question copied = copy.getQuestions().get(i);
+      assertNotSame(question, copied);
+      assertNotSame(question.getAnswers(), copied.getAnswers());
+      // Key is immutable, so it's shared
+      assertSame(question.getAnswerKey(), copied.getAnswerKey());
+      assertEquals(question.getQuestionText(), copied.getQuestionText());
+      assertEquals(question.isAnonymous(), copied.isAnonymous());
+    }
+    assertEquals(stored.getTitle(), copy.getTitle());
+    assertEquals(stored.getDocumentId(), copy.getDocumentId());
+    assertEquals(stored.getLeaderboardSheet(), copy.getLeaderboardSheet());
+    assertEquals(stored.getStatisticsSheet(), copy.getStatisticsSheet());
+  }
+
+  public void testCopyOfQuizWithoutQuestions() {
+    Quiz copy = new Quiz(new Quiz("Empty", null, null, null, "od6", "doc-quiz", "od7"));
+    assertNull(copy.getQuestions());
+  }
+
+  private static Quiz createQuiz() {
+    return ModelFixtures.createQuiz("doc-quiz", "Capitals", QUESTION_COUNT, ANSWER_COUNT);
+  }
+}
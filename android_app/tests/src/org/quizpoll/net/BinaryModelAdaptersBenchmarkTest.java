@@ -0,0 +1,112 @@
+/*
+ Copyright 2011 Google Inc. All Rights Reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License');
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS-IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.quizpoll.net;
+
+import android.util.Log;
+
+import junit.framework.TestCase;
+
+import org.quizpoll.data.model.DocsEntry;
+import org.quizpoll.data.model.LeaderboardEntry;
+import org.quizpoll.data.model.ModelFixtures;
+import org.quizpoll.data.model.Poll;
+import org.quizpoll.data.model.Quiz;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compares size and decoding time of models in binary format with JSON, both
+ * read the way HttpHelper reads responses. Results are written to the log.
+ */
+public class BinaryModelAdaptersBenchmarkTest extends TestCase {
+
+  private static final String TAG = "BinaryModelAdaptersBenchmark";
+
+  private static final int WARMUP_ITERATIONS = 100;
+  private static final int ITERATIONS = 500;
+
+  public void testQuiz() throws IOException {
+    Quiz quiz = ModelFixtures.createQuiz("doc-quiz", "Capitals", 200, 4);
+    Quiz decoded = compare("Quiz of 200 questions", quiz, ModelAdapters.QUIZ,
+        BinaryModelAdapters.QUIZ);
+    assertEquals(200, decoded.getQuestions().size());
+  }
+
+  public void testPoll() throws IOException {
+    Poll poll = new Poll("Lecture 1", ModelFixtures.createQuestions(20, 4), "od6", "od7",
+        "doc-poll");
+    Poll decoded = compare("Poll of 20 questions", poll, ModelAdapters.POLL,
+        BinaryModelAdapters.POLL);
+    assertEquals(20, decoded.getQuestions().size());
+  }
+
+  public void testLeaderboard() throws IOException {
+    List<LeaderboardEntry> decoded = compare("Leaderboard of 500 entries",
+        ModelFixtures.createLeaderboard(500), ModelAdapters.LEADERBOARD,
+        BinaryModelAdapters.LEADERBOARD);
+    assertEquals(500, decoded.size());
+  }
+
+  public void testDocuments() throws IOException {
+    List<DocsEntry> decoded = compare("Collection of 100 documents",
+        ModelFixtures.createDocuments(100), ModelAdapters.DOCS_ENTRIES,
+        BinaryModelAdapters.DOCS_ENTRIES);
+    assertEquals(100, decoded.size());
+  }
+
+  /**
+   * Encodes the model in both formats, logs their sizes and average decoding
+   * times. Returns the model decoded from binary, it must encode into the
+   * same bytes.
+   */
+  private static <T> T compare(String name, T model, JsonAdapter<T> jsonAdapter,
+      BinaryAdapter<T> binaryAdapter) throws IOException {
+    byte[] json = jsonAdapter.toJson(model).getBytes("UTF-8");
+    byte[] binary = binaryAdapter.toBinary(model);
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      readJson(jsonAdapter, json);
+      binaryAdapter.fromBinary(new ByteArrayInputStream(binary));
+    }
+
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      readJson(jsonAdapter, json);
+    }
+    long jsonNanos = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    T decoded = null;
+    for (int i = 0; i < ITERATIONS; i++) {
+      decoded = binaryAdapter.fromBinary(new ByteArrayInputStream(binary));
+    }
+    long binaryNanos = System.nanoTime() - start;
+
+    Log.i(TAG, name + ": JSON " + json.length + " B " + jsonNanos / ITERATIONS / 1000
+        + " us, binary " + binary.length + " B " + binaryNanos / ITERATIONS / 1000 + " us");
+    assertTrue(binary.length < json.length);
+    assertTrue(Arrays.equals(binary, binaryAdapter.toBinary(decoded)));
+    return decoded;
+  }
+
+  private static <T> T readJson(JsonAdapter<T> adapter, byte[] json) throws IOException {
+    return adapter.fromJson(new InputStreamReader(new ByteArrayInputStream(json), "UTF-8"));
+  }
+}
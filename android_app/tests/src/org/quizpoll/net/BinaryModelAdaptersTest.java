@@ -0,0 +1,153 @@
+/*
+ Copyright 2011 Google Inc. All Rights Reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License');
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS-IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.quizpoll.net;
+
+import android.test.InstrumentationTestCase;
+
+import org.quizpoll.data.model.Answer;
+import org.quizpoll.data.model.DocsEntry;
+import org.quizpoll.data.model.LeaderboardEntry;
+import org.quizpoll.data.model.Poll;
+import org.quizpoll.data.model.Question;
+import org.quizpoll.data.model.Question.QuestionType;
+import org.quizpoll.data.model.Quiz;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Decodes golden files written by the server encoder (server/wire_format.py)
+ * and encodes the models again. Values must match models of
+ * server/wire_format_test.py, which checks the same files.
+ */
+public class BinaryModelAdaptersTest extends InstrumentationTestCase {
+
+  private static final String GOLDEN_DIR = "wire_format/";
+
+  public void testQuiz() throws IOException {
+    byte[] golden = readGolden("quiz.bin");
+    Quiz quiz = BinaryModelAdapters.QUIZ.fromBinary(new ByteArrayInputStream(golden));
+    assertEquals("Capitals \u010Cesko", quiz.getTitle());
+    assertNull(quiz.getDescription());
+    assertEquals("http://example.com/map.png", quiz.getImage());
+    assertEquals("od6", quiz.getLeaderboardSheet());
+    assertEquals("od7", quiz.getStatisticsSheet());
+    assertEquals("doc-quiz", quiz.getDocumentId());
+    assertEquals(-150, quiz.getScore());
+    List<Question> questions = quiz.getQuestions();
+    assertEquals(2, questions.size());
+
+    Question first = questions.get(0);
+    assertEquals("Hlavn\u00e9 mesto?", first.getQuestionText());
+    assertEquals(3, first.getNumber());
+    assertFalse(first.isAnonymous());
+    assertEquals(QuestionType.SINGLE_CHOICE, first.getType());
+    assertAnswer("Prague", true, 0, first.getAnswers().get(0));
+    assertAnswer("Brno", false, 1, first.getAnswers().get(1));
+
+    Question second = questions.get(1);
+    assertEquals("Pick all", second.getQuestionText());
+    assertEquals(300, second.getNumber());
+    assertTrue(second.isAnonymous());
+    assertEquals(QuestionType.MULTIPLE_CHOICE, second.getType());
+    assertAnswer("Brno", true, 0, second.getAnswers().get(0));
+    assertAnswer(null, true, 63, second.getAnswers().get(1));
+
+    assertTrue(Arrays.equals(golden, BinaryModelAdapters.QUIZ.toBinary(quiz)));
+  }
+
+  public void testPoll() throws IOException {
+    byte[] golden = readGolden("poll.bin");
+    Poll poll = BinaryModelAdapters.POLL.fromBinary(new ByteArrayInputStream(golden));
+    assertEquals("Lecture 1", poll.getTitle());
+    assertEquals("od6", poll.getInternalDataSheet());
+    assertEquals("od7", poll.getResponsesSheet());
+    assertEquals("doc-poll", poll.getDocumentId());
+    assertEquals(1, poll.getQuestions().size());
+    Question question = poll.getQuestions().get(0);
+    assertEquals("Ready?", question.getQuestionText());
+    assertTrue(question.getAnswers().isEmpty());
+    assertTrue(question.isAnonymous());
+
+    assertTrue(Arrays.equals(golden, BinaryModelAdapters.POLL.toBinary(poll)));
+  }
+
+  public void testLeaderboard() throws IOException {
+    byte[] golden = readGolden("leaderboard.bin");
+    List<LeaderboardEntry> entries =
+        BinaryModelAdapters.LEADERBOARD.fromBinary(new ByteArrayInputStream(golden));
+    assertEquals(3, entries.size());
+    assertEquals(1200, entries.get(0).getScore());
+    assertEquals("alice", entries.get(0).getLdap());
+    // Empty score in spreadsheet
+    assertEquals(0, entries.get(1).getScore());
+    assertEquals("bob", entries.get(1).getLdap());
+    assertEquals(-5, entries.get(2).getScore());
+    assertNull(entries.get(2).getLdap());
+
+    assertTrue(Arrays.equals(golden, BinaryModelAdapters.LEADERBOARD.toBinary(entries)));
+  }
+
+  public void testDocuments() throws IOException {
+    byte[] golden = readGolden("documents.bin");
+    List<DocsEntry> entries =
+        BinaryModelAdapters.DOCS_ENTRIES.fromBinary(new ByteArrayInputStream(golden));
+    assertEquals(2, entries.size());
+    assertEquals(DocsEntry.COLLECTION, entries.get(0).getType());
+    assertEquals("Collection", entries.get(0).getTitle());
+    assertEquals("col-1", entries.get(0).getId());
+    assertEquals(DocsEntry.QUIZ, entries.get(1).getType());
+    assertEquals("Collection", entries.get(1).getTitle());
+    assertEquals("doc-quiz", entries.get(1).getId());
+
+    assertTrue(Arrays.equals(golden, BinaryModelAdapters.DOCS_ENTRIES.toBinary(entries)));
+  }
+
+  public void testGoldenFilesAreRecognizedAsBinary() throws IOException {
+    InputStream in = new ByteArrayInputStream(readGolden("documents.bin"));
+    assertTrue(BinaryAdapter.isBinary(in));
+    assertFalse(BinaryAdapter.isBinary(new ByteArrayInputStream("[]".getBytes("UTF-8"))));
+  }
+
+  private static void assertAnswer(String text, boolean correct, int number, Answer answer) {
+    assertEquals(text, answer.getAnswerText());
+    assertEquals(correct, answer.isCorrect());
+    assertEquals(number, answer.getNumber());
+  }
+
+  /**
+   * Reads golden file from assets of the test package
+   */
+  private byte[] readGolden(String name) throws IOException {
+    InputStream in = getInstrumentation().getContext().getAssets().open(GOLDEN_DIR + name);
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[1024];
+      int count;
+      while ((count = in.read(buffer)) != -1) {
+        out.write(buffer, 0, count);
+      }
+      return out.toByteArray();
+    } finally {
+      in.close();
+    }
+  }
+}
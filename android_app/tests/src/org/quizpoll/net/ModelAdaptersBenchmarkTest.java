@@ -0,0 +1,139 @@
+/*
+ Copyright 2011 Google Inc. All Rights Reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License');
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS-IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.quizpoll.net;
+
+import android.util.Log;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.MalformedJsonException;
+
+import junit.framework.TestCase;
+
+import org.quizpoll.data.model.Answer;
+import org.quizpoll.data.model.ModelFixtures;
+import org.quizpoll.data.model.Question;
+import org.quizpoll.data.model.Quiz;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * Compares hand-written model adapters with reflection-based binding of GSON,
+ * which they replaced. Timings of reading and writing are written to the log.
+ */
+public class ModelAdaptersBenchmarkTest extends TestCase {
+
+  private static final String TAG = "ModelAdaptersBenchmark";
+
+  private static final int QUESTION_COUNT = 30;
+  private static final int ANSWER_COUNT = 4;
+  private static final int WARMUP_ITERATIONS = 50;
+  private static final int ITERATIONS = 200;
+
+  private final Gson gson = new GsonBuilder()
+      .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES).create();
+
+  public void testAdapterReadsSameQuizAsGson() throws IOException {
+    String json = createQuizJson();
+    Quiz expected = gson.fromJson(json, Quiz.class);
+    Quiz quiz = ModelAdapters.QUIZ.fromJson(new StringReader(json));
+
+    assertEquals(expected.getTitle(), quiz.getTitle());
+    assertEquals(expected.getDocumentId(), quiz.getDocumentId());
+    assertEquals(expected.getScore(), quiz.getScore());
+    assertEquals(expected.getQuestions().size(), quiz.getQuestions().size());
+    for (int i = 0; i < QUESTION_COUNT; i++) {
+      Question expectedQuestion = expected.getQuestions().get(i);
+      Question question = quiz.getQuestions().get(i);
+      assertEquals(expectedQuestion.getQuestionText(), question.getQuestionText());
+      assertEquals(expectedQuestion.getNumber(), question.getNumber());
+      for (int j = 0; j < ANSWER_COUNT; j++) {
+        Answer expectedAnswer = expectedQuestion.getAnswers().get(j);
+        Answer answer = question.getAnswers().get(j);
+        assertEquals(expectedAnswer.getAnswerText(), answer.getAnswerText());
+        assertEquals(expectedAnswer.isCorrect(), answer.isCorrect());
+        assertEquals(expectedAnswer.getNumber(), answer.getNumber());
+      }
+    }
+  }
+
+  public void testReadQuiz() throws IOException {
+    String json = createQuizJson();
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      gson.fromJson(json, Quiz.class);
+      ModelAdapters.QUIZ.fromJson(new StringReader(json));
+    }
+
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      gson.fromJson(json, Quiz.class);
+    }
+    long gsonNanos = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      ModelAdapters.QUIZ.fromJson(new StringReader(json));
+    }
+    long adapterNanos = System.nanoTime() - start;
+
+    Log.i(TAG, "Quiz of " + json.length() + " chars read " + ITERATIONS + " times, GSON: "
+        + gsonNanos / 1000000 + " ms, adapter: " + adapterNanos / 1000000 + " ms");
+  }
+
+  public void testWriteQuiz() {
+    Quiz quiz = ModelFixtures.createQuiz("doc-quiz", "Capitals", QUESTION_COUNT, ANSWER_COUNT);
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      gson.toJson(quiz);
+      ModelAdapters.QUIZ.toJson(quiz);
+    }
+
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      gson.toJson(quiz);
+    }
+    long gsonNanos = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    String json = null;
+    for (int i = 0; i < ITERATIONS; i++) {
+      json = ModelAdapters.QUIZ.toJson(quiz);
+    }
+    long adapterNanos = System.nanoTime() - start;
+
+    Log.i(TAG, "Quiz of " + json.length() + " chars written " + ITERATIONS + " times, GSON: "
+        + gsonNanos / 1000000 + " ms, adapter: " + adapterNanos / 1000000 + " ms");
+  }
+
+  public void testOnlyIntegerIsLenient() throws IOException {
+    assertEquals(5, ModelAdapters.INTEGER.fromJson(new StringReader("5")).intValue());
+    assertEquals(-2, ModelAdapters.INTEGER.fromJson(new StringReader("\"-2\"")).intValue());
+    try {
+      ModelAdapters.QUIZ.fromJson(new StringReader("{'title': 'Capitals'}"));
+      fail("Malformed quiz was accepted");
+    } catch (MalformedJsonException e) {
+      // Expected
+    }
+  }
+
+  private static String createQuizJson() {
+    Quiz quiz = ModelFixtures.createQuiz("doc-quiz", "Capitals", QUESTION_COUNT, ANSWER_COUNT);
+    quiz.setScore(1200);
+    return ModelAdapters.QUIZ.toJson(quiz);
+  }
+}
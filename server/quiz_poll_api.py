@@ -22,7 +22,10 @@ Both Android client and Javascript client are using this API.
 """
 
 import functools
+import gzip
 import random
+import StringIO
+import time
 
 from atom import http_core
 
@@ -39,6 +42,8 @@ from google.appengine.api import app_identity
 from google.appengine.api import memcache
 from google.appengine.api import users
 
+import wire_format
+
 # OAuth scopes for auth
 SCOPE_DOCUMENTS = 'https://docs.google.com/feeds/'
 SCOPE_SPREADSHEETS = 'https://spreadsheets.google.com/feeds/'
@@ -52,7 +57,30 @@ NOT_ANSWERED_YET = '-not answered yet-'
 
 # Memcache keys
 MEMCACHE_KEY_POLL_STATUS = 'poll_status_%s'
-MEMCACHE_KEY_POLL = 'poll_%s'
+MEMCACHE_KEY_POLL_STATUS_LOCK = 'poll_status_lock_%s'
+MEMCACHE_KEY_POLL_STATUS_VERSION = 'poll_status_version_%s'
+MEMCACHE_KEY_POLL = 'poll_data_%s'
+MEMCACHE_KEY_SUBMISSION = 'submission_%s'
+MEMCACHE_KEY_QUESTION_TEXTS = 'question_texts_%s'
+
+# Long-polled status request returns unchanged status after this many seconds.
+# Kept short, every waiting request holds an instance thread and a client one.
+POLL_STATUS_WAIT_TIMEOUT = 8
+# How often waiting status requests check memcache, in seconds. Short enough
+# for the change to reach students within a few hundred milliseconds, each
+# check is a single memcache get.
+POLL_STATUS_WAIT_STEP = POLL_STATUS_WAIT_TIMEOUT / 50.0
+
+# How long accepted submissions are remembered to ignore their retries
+SUBMISSION_DEDUPE_TIME = 24 * 60 * 60
+# How long submission being processed blocks its retries, longer than a request
+SUBMISSION_CLAIM_TIME = 2 * 60
+# Memcache values of submission keys
+SUBMISSION_PENDING = 'pending'
+SUBMISSION_DONE = 'done'
+
+# How long question texts needed by compact quiz submissions are cached
+QUESTION_TEXTS_CACHE_TIME = 10 * 60
 
 
 class Error(Exception):
@@ -91,31 +119,67 @@ def DocsClientDecorator(func):
       scope = SCOPE_SPREADSHEETS
     client = _GetAuthenticatedClient(scope)
     kwargs['client'] = client
-    # Submit is done by POST containing JSON
+    # Submit is done by POST containing JSON, Android client gzips large ones
+    submission_key = None
     if 'submit' in request.path:
-      kwargs['json_data'] = request.raw_post_data
+      kwargs['json_data'] = _RequestBody(request)
+      # Android client retries submissions from its outbox with the same key
+      submission_key = request.META.get('HTTP_X_IDEMPOTENCY_KEY')
+      if submission_key:
+        submission_key = MEMCACHE_KEY_SUBMISSION % submission_key
+        # Claim the key first, so concurrent retries are not processed too
+        if not memcache.add(submission_key, SUBMISSION_PENDING,
+                            SUBMISSION_CLAIM_TIME):
+          if memcache.get(submission_key) == SUBMISSION_DONE:
+            return http.HttpResponse('OK')
+          # Still being processed, client keeps it in outbox and retries later
+          return http.HttpResponse(status=503)  # Service Unavailable
+    # Android app shuffles questions itself, so it can cache the quiz
+    if (request.path.startswith('/qp_api/quiz/') and
+        'leaderboard' not in request.path and 'submit' not in request.path):
+      kwargs['shuffle'] = request.GET.get('shuffle') != '0'
+    # Client waits for status different from the one it already knows
+    if 'status/wait' in request.path:
+      kwargs['current'] = request.GET.get('current')
+    # Status is versioned, unchanged one is answered by 304
+    if 'poll/status/' in request.path:
+      kwargs['etag'] = request.META.get('HTTP_IF_NONE_MATCH')
+    # Android client accepts models in compact binary encoding
+    if request.method == 'GET' and 'status' not in request.path:
+      kwargs['binary'] = wire_format.Accepts(request)
     # Force update based on user-agent is used only in Poll function
     if ('poll' in request.path and 'submit' not in request.path and
         'status' not in request.path):
       kwargs['user_agent'] = request.META['HTTP_USER_AGENT']
+    accepted = False
     try:
-      return func(*args, **kwargs)
+      response = func(*args, **kwargs)
+      accepted = response.status_code == 200
+      return response
     except PermissionError:
       return http.HttpResponse(status=403)  # Forbidden
     except FormatError:
       return http.HttpResponse(status=415)  # Unsupported Media Type
     except NeedsUpdateError:
       return http.HttpResponse(status=426)  # Upgrade Required
+    finally:
+      if submission_key:
+        if accepted:
+          memcache.set(submission_key, SUBMISSION_DONE, SUBMISSION_DEDUPE_TIME)
+        else:
+          # Release the claim, so retry of the failed submission is processed
+          memcache.delete(submission_key)
   return Wrap
 
 
 @DocsClientDecorator
-def DocumentsInCollection(client, collection_id):
+def DocumentsInCollection(client, collection_id, binary=False):
   """Lists quiz-related documents in a collection.
 
   Args:
     client: Docs gdata client
     collection_id: id of collection with quizzes/collections
+    binary: whether to respond in binary encoding instead of JSON
 
   Returns:
     JSON representation of documents
@@ -135,12 +199,24 @@ def DocumentsInCollection(client, collection_id):
     document_id = entry.resource_id.text.split(':')[1]
     data.append({'type': document_type, 'title': title,
                  'id': document_id})
-  return _OutputJson(data)
+  return _OutputModel(data, binary, wire_format.EncodeDocuments)
 
 
 @DocsClientDecorator
-def Quiz(client, document_id):
-  """Creates JSON representation of Mobile Quiz Game spreadsheet."""
+def Quiz(client, document_id, shuffle=True, binary=False):
+  """Creates JSON representation of Mobile Quiz Game spreadsheet.
+
+  Args:
+    client: spreadsheets client
+    document_id: id of the spreadsheet
+    shuffle: whether to shuffle questions and answers and select first 10,
+        otherwise all questions are returned in stable order, so the
+        response can be cached and revalidated using ETag
+    binary: whether to respond in binary encoding instead of JSON
+
+  Returns:
+    JSON representation of the quiz
+  """
   try:
     feed = client.GetWorksheets(document_id)
   except gdata_client.RequestError:
@@ -168,12 +244,14 @@ def Quiz(client, document_id):
         answers.append({'answer_text': answer_text, 'correct': correct,
                         'number': cell_number - 1})
     # Randomize answers
-    random.shuffle(answers)
+    if shuffle:
+      random.shuffle(answers)
     questions.append({'question_text': question_text, 'answers': answers,
                       'number': row_number})
   # Randomize questions and show just first 10
-  random.shuffle(questions)
-  questions = questions[:10]
+  if shuffle:
+    random.shuffle(questions)
+    questions = questions[:10]
   # Second sheet contains metadata
   _, data = _Cells(client, document_id, sheet_ids[1])
   if not data or len(data[0]) < 2:
@@ -187,16 +265,16 @@ def Quiz(client, document_id):
           'leaderboard_sheet': leaderboard_sheet,
           'statistics_sheet': statistics_sheet, 'document_id': document_id,
           'questions': questions}
-  return _OutputJson(quiz)
+  return _OutputModel(quiz, binary, wire_format.EncodeQuiz)
 
 
 @DocsClientDecorator
-def QuizLeaderboard(client, document_id, sheet_id):
+def QuizLeaderboard(client, document_id, sheet_id, binary=False):
   """Creates JSON representation of Mobile Quiz Game's leaderboard."""
   # Third sheet contains leaderboard
   _, data = _Cells(client, document_id, sheet_id)
   leaderboard = [{'ldap': row[0], 'score': row[1]} for row in data]
-  return _OutputJson(leaderboard)
+  return _OutputModel(leaderboard, binary, wire_format.EncodeLeaderboard)
 
 
 @DocsClientDecorator
@@ -207,6 +285,12 @@ def QuizSubmit(client, json_data):
   entry in one worksheet, creates statistics from responses and writes that
   statistics into another worksheet.
 
+  The game is either the whole quiz with answered flags, or compact results
+  without any texts: {"document_id", "leaderboard_sheet", "statistics_sheet",
+  "score", "results": [[question number, success 0/1, bitmask of chosen
+  answer numbers], ...]}. Question texts of compact results are read from the
+  quiz only when statistics don't have them yet.
+
   Args:
     client: spreadsheet client
     json_data: json string of quiz
@@ -215,6 +299,8 @@ def QuizSubmit(client, json_data):
     OK response
   """
   quiz = simplejson.loads(json_data)
+  if 'results' in quiz:
+    quiz['questions'] = _ExpandResults(quiz['results'])
   # Leaderboard update
   username = _GetUsername()
   feed = client.GetListFeed(quiz['document_id'], quiz['leaderboard_sheet'])
@@ -249,7 +335,12 @@ def QuizSubmit(client, json_data):
       for _ in range(len(statistics), question['number'] + 1):
         statistics.append([NOT_ANSWERED_YET, 0, 0, '0 %'])
     u = statistics[question['number']]
-    u[0] = question['question_text']  # Question text
+    if question['question_text'] is not None:
+      u[0] = question['question_text']  # Question text
+    elif u[0] == NOT_ANSWERED_YET:
+      texts = _QuestionTexts(client, quiz['document_id'])
+      if question['number'] < len(texts):
+        u[0] = texts[question['number']]
     if question['success'] == True:
       u[1] += 1  # Successes
     else:
@@ -291,11 +382,11 @@ def QuizSubmit(client, json_data):
 
 
 @DocsClientDecorator
-def Poll(client, document_id, user_agent):
+def Poll(client, document_id, user_agent, binary=False):
   """Creates JSON representation of Mobile Polling spreadsheet."""
   memcache_key = MEMCACHE_KEY_POLL % document_id
-  memcache_value = memcache.get(memcache_key)
-  if memcache_value is None:
+  polling = memcache.get(memcache_key)
+  if polling is None:
     try:
       feed = client.GetWorksheets(document_id)
     except gdata_client.RequestError:
@@ -347,33 +438,97 @@ def Poll(client, document_id, user_agent):
     polling = {'title': title, 'internal_data_sheet': sheet_ids[2],
                'responses_sheet': sheet_ids[3], 'document_id': document_id,
                'questions': questions}
-    response = _OutputJson(polling)
-    memcache.set(memcache_key, response.content, 30)
-    return response
-  else:
-    # Use cached value
-    return http.HttpResponse(memcache_value, 'application/json')
+    # Data is cached, so it can be encoded in the format of each client
+    memcache.set(memcache_key, polling, 30)
+  return _OutputModel(polling, binary, wire_format.EncodePoll)
 
 
 @DocsClientDecorator
-def PollStatus(client, document_id, sheet_id):
-  """Returns current status of Mobile Polling."""
+def PollStatus(client, document_id, sheet_id, etag):
+  """Returns current status of Mobile Polling.
+
+  Response carries ETag with version of the status, 304 Not Modified is
+  returned when client already has it.
+  """
+  content = _LoadPollStatus(client, document_id, sheet_id)
+  return _PollStatusResponse(document_id, content, etag)
+
+
+@DocsClientDecorator
+def PollStatusWait(client, document_id, sheet_id, current, etag):
+  """Returns status of Mobile Polling as soon as it differs from current.
+
+  Status is checked in memcache, which is invalidated by PollStatusInvalidate
+  when the instructor changes the question. Only one waiting request reloads
+  the status from spreadsheet after invalidation.
+
+  Args:
+    client: spreadsheets client
+    document_id: id of the spreadsheet
+    sheet_id: id of the internal data sheet
+    current: status known by the client, None to return immediately
+    etag: ETag of status known by the client
+
+  Returns:
+    JSON status, unchanged one (or 304) after POLL_STATUS_WAIT_TIMEOUT
+  """
   memcache_key = MEMCACHE_KEY_POLL_STATUS % document_id
-  memcache_value = memcache.get(memcache_key)
-  if memcache_value is None:
-    # Load it from spreadsheet
-    _, data = _Cells(client, document_id, sheet_id)
-    # We just need question number in the first cell
-    if not data:
-      raise FormatError
-    response = _OutputJson(data[0][0])
-    # Expiration is one hour, because cache is invalidated using HTTP call
-    # from spreadsheet
-    memcache.set(memcache_key, response.content, 60 * 60)
-    return response
+  lock_key = MEMCACHE_KEY_POLL_STATUS_LOCK % document_id
+  deadline = time.time() + POLL_STATUS_WAIT_TIMEOUT
+  content = None
+  while True:
+    memcache_value = memcache.get(memcache_key)
+    if memcache_value is not None:
+      content = memcache_value
+    elif memcache.add(lock_key, True, 10):
+      try:
+        content = _LoadPollStatus(client, document_id, sheet_id)
+      finally:
+        memcache.delete(lock_key)
+    if content is not None and (
+        current is None or str(simplejson.loads(content)) != current):
+      break
+    remaining = deadline - time.time()
+    if remaining <= 0:
+      if content is None:
+        content = _LoadPollStatus(client, document_id, sheet_id)
+      break
+    time.sleep(min(POLL_STATUS_WAIT_STEP, remaining))
+  return _PollStatusResponse(document_id, content, etag)
+
+
+def _PollStatusResponse(document_id, content, etag):
+  """Creates response with status and its version in ETag.
+
+  Version is increased by PollStatusInvalidate. Status itself is part of the
+  ETag too, so eviction of the version from memcache can't cause a wrong 304.
+  """
+  version = memcache.get(MEMCACHE_KEY_POLL_STATUS_VERSION % document_id) or 0
+  current_etag = '"%d-%s"' % (version, simplejson.loads(content))
+  if etag == current_etag:
+    response = http.HttpResponseNotModified()
   else:
-    # Use cached value
-    return http.HttpResponse(memcache_value, 'application/json')
+    response = http.HttpResponse(content, 'application/json')
+  response['ETag'] = current_etag
+  return response
+
+
+def _LoadPollStatus(client, document_id, sheet_id):
+  """Returns JSON status of Mobile Polling, cached in memcache."""
+  memcache_key = MEMCACHE_KEY_POLL_STATUS % document_id
+  memcache_value = memcache.get(memcache_key)
+  if memcache_value is not None:
+    return memcache_value
+  # Load it from spreadsheet
+  _, data = _Cells(client, document_id, sheet_id)
+  # We just need question number in the first cell
+  if not data:
+    raise FormatError
+  content = simplejson.dumps(data[0][0])
+  # Expiration is one hour, because cache is invalidated using HTTP call
+  # from spreadsheet
+  memcache.set(memcache_key, content, 60 * 60)
+  return content
 
 
 def PollStatusInvalidate(unused_request, document_id):
@@ -391,6 +546,8 @@ def PollStatusInvalidate(unused_request, document_id):
   """
   memcache_key = MEMCACHE_KEY_POLL_STATUS % document_id
   memcache.delete(memcache_key)
+  memcache.incr(MEMCACHE_KEY_POLL_STATUS_VERSION % document_id,
+                initial_value=0)
   return http.HttpResponse('OK')
 
 
@@ -490,12 +647,75 @@ def _Cells(client, document_id, worksheet_id):
   return feed, data
 
 
+def _ExpandResults(results):
+  """Converts compact quiz results into questions with answered flags.
+
+  Args:
+    results: list of [question number, success 0/1, bitmask of answers]
+
+  Returns:
+    list of questions like in the full quiz, without texts
+  """
+  questions = []
+  for number, success, mask in results:
+    answers = []
+    answer_number = 0
+    while mask >> answer_number:
+      if (mask >> answer_number) & 1:
+        answers.append({'number': answer_number, 'answered': True})
+      answer_number += 1
+    questions.append({'number': number, 'success': bool(success),
+                      'question_text': None, 'answers': answers})
+  return questions
+
+
+def _QuestionTexts(client, document_id):
+  """Returns texts of all questions of the quiz, cached in memcache."""
+  memcache_key = MEMCACHE_KEY_QUESTION_TEXTS % document_id
+  texts = memcache.get(memcache_key)
+  if texts is None:
+    feed = client.GetWorksheets(document_id)
+    # First sheet contains questions
+    _, data = _Cells(client, document_id, feed.entry[0].GetWorksheetId())
+    texts = [row[0] for row in data]
+    memcache.set(memcache_key, texts, QUESTION_TEXTS_CACHE_TIME)
+  return texts
+
+
+def _RequestBody(request):
+  """Returns body of the request, decompressed if it was sent gzipped."""
+  body = request.raw_post_data
+  if request.META.get('HTTP_CONTENT_ENCODING', '').lower() == 'gzip':
+    body = gzip.GzipFile(fileobj=StringIO.StringIO(body)).read()
+  return body
+
+
 def _OutputJson(simple_data):
   """Creates HTTP response in JSON format."""
   content = simplejson.dumps(simple_data)
   return http.HttpResponse(content, 'application/json')
 
 
+def _OutputModel(simple_data, binary, encode):
+  """Creates HTTP response in binary encoding or JSON format.
+
+  Args:
+    simple_data: model built from dicts and lists
+    binary: whether the client accepts binary encoding
+    encode: wire_format function encoding the model
+
+  Returns:
+    HTTP response
+  """
+  if binary:
+    response = http.HttpResponse(encode(simple_data), wire_format.CONTENT_TYPE)
+  else:
+    response = _OutputJson(simple_data)
+  # Caches must not serve one format to clients asking for the other
+  response['Vary'] = 'Accept'
+  return response
+
+
 def _FormatQuizName(name):
   """Removes [Q] from spreadsheet name."""
   return name.replace('[Q]', '').strip()
@@ -34,6 +34,10 @@ MIDDLEWARE_CLASSES = (
     'django.contrib.auth.middleware.AuthenticationMiddleware',
 )
 
+# CommonMiddleware adds ETag to responses and answers conditional requests
+# with 304 Not Modified, Android app caches responses using it
+USE_ETAGS = True
+
 TEMPLATE_CONTEXT_PROCESSORS = (
     'django.contrib.auth.context_processors.auth',
     'django.core.context_processors.request',
@@ -0,0 +1,163 @@
+#!/usr/bin/python2.7
+# Copyright 2011 Google Inc. All Rights Reserved.
+#
+# Licensed under the Apache License, Version 2.0 (the "License');
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS-IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+
+
+"""Local stub of the Mobile Polling part of the JSON API.
+
+It serves one hardcoded poll without spreadsheets, so the Android client can
+be tested offline. Point AppEngineHelper.BROKER_URL to this server (e.g.
+http://10.0.2.2:8080 from the emulator) and run:
+
+  python stub_broker.py [port]
+
+The instructor is simulated by requests to /stub/next, /stub/wait and
+/stub/close, which change the status and wake up waiting clients the same
+way PollStatusInvalidate does.
+"""
+
+import BaseHTTPServer
+import json
+import SocketServer
+import sys
+import threading
+import urlparse
+
+# Same semantics as the real API
+POLL_STATUS_WAIT_TIMEOUT = 8
+STATUS_WAITING = '-1'
+STATUS_CLOSED = '-2'
+
+POLL = {
+    'title': 'Stub poll',
+    'internal_data_sheet': 'od7',
+    'responses_sheet': 'od8',
+    'document_id': 'stub',
+    'questions': [
+        {'question_text': 'Is this an offline test?', 'anonymous': False,
+         'number': 0,
+         'answers': [{'answer_text': 'Yes', 'correct': True, 'number': 0},
+                     {'answer_text': 'No', 'correct': False, 'number': 1}]},
+        {'question_text': 'Pick primes', 'anonymous': True, 'number': 1,
+         'answers': [{'answer_text': '2', 'correct': True, 'number': 0},
+                     {'answer_text': '4', 'correct': False, 'number': 1},
+                     {'answer_text': '5', 'correct': True, 'number': 2}]},
+    ],
+}
+
+
+class Status(object):
+  """Current poll status shared by all request threads."""
+
+  def __init__(self):
+    self.value = STATUS_WAITING
+    self.condition = threading.Condition()
+
+  def Get(self):
+    with self.condition:
+      return self.value
+
+  def Set(self, value):
+    with self.condition:
+      self.value = value
+      self.condition.notifyAll()
+
+  def WaitForChange(self, current, timeout):
+    with self.condition:
+      if current is not None and self.value == current:
+        self.condition.wait(timeout)
+      return self.value
+
+
+STATUS = Status()
+
+
+class Handler(BaseHTTPServer.BaseHTTPRequestHandler):
+  """Handles requests of the Android client."""
+
+  def do_GET(self):
+    url = urlparse.urlparse(self.path)
+    query = urlparse.parse_qs(url.query)
+    path = url.path
+    if path == '/_ah/login':
+      self.send_response(302)
+      self.send_header('Set-Cookie', 'ACSID=stub; Path=/')
+      self.send_header('Location', '/')
+      self.end_headers()
+    elif path.startswith('/qp_api/poll/status/wait/'):
+      current = query.get('current', [None])[0]
+      self._Status(STATUS.WaitForChange(current, POLL_STATUS_WAIT_TIMEOUT))
+    elif path.startswith('/qp_api/poll/status/'):
+      self._Status(STATUS.Get())
+    elif path.startswith('/qp_api/poll/'):
+      self._Json(POLL)
+    elif path == '/stub/next':
+      value = STATUS.Get()
+      if value in (STATUS_WAITING, STATUS_CLOSED):
+        value = '1'
+      else:
+        value = str(int(value) % len(POLL['questions']) + 1)
+      STATUS.Set(value)
+      self._Json(value)
+    elif path == '/stub/wait':
+      STATUS.Set(STATUS_WAITING)
+      self._Json(STATUS_WAITING)
+    elif path == '/stub/close':
+      STATUS.Set(STATUS_CLOSED)
+      self._Json(STATUS_CLOSED)
+    else:
+      self.send_error(404)
+
+  def do_POST(self):
+    length = int(self.headers.getheader('Content-Length', 0))
+    self.rfile.read(length)
+    if self.path == '/qp_api/poll/submit':
+      self.send_response(200)
+      self.end_headers()
+      self.wfile.write('OK')
+    else:
+      self.send_error(404)
+
+  def _Status(self, value):
+    etag = '"0-%s"' % value
+    if self.headers.getheader('If-None-Match') == etag:
+      self.send_response(304)
+      self.send_header('ETag', etag)
+      self.end_headers()
+    else:
+      self._Json(value, {'ETag': etag})
+
+  def _Json(self, data, headers=None):
+    content = json.dumps(data)
+    self.send_response(200)
+    self.send_header('Content-Type', 'application/json')
+    self.send_header('Content-Length', str(len(content)))
+    for name, value in (headers or {}).items():
+      self.send_header(name, value)
+    self.end_headers()
+    self.wfile.write(content)
+
+
+class Server(SocketServer.ThreadingMixIn, BaseHTTPServer.HTTPServer):
+  """Serves every request in its own thread, so long-polls don't block."""
+  daemon_threads = True
+
+
+def main():
+  port = int(sys.argv[1]) if len(sys.argv) > 1 else 8080
+  Server(('', port), Handler).serve_forever()
+
+
+if __name__ == '__main__':
+  main()
@@ -33,6 +33,8 @@ urlpatterns = patterns('',
     (r'^qp_api/poll/submit$', quiz_poll_api.PollSubmit, {}, 'PollSubmit'),
     (r'^qp_api/poll/status/invalidate/(?P<document_id>.+)$',
      quiz_poll_api.PollStatusInvalidate, {}, 'PollStatusInvalidate'),
+    (r'^qp_api/poll/status/wait/(?P<document_id>.+)/(?P<sheet_id>.+)$',
+     quiz_poll_api.PollStatusWait, {}, 'PollStatusWait'),
     (r'^qp_api/poll/status/(?P<document_id>.+)/(?P<sheet_id>.+)$',
      quiz_poll_api.PollStatus, {}, 'PollStatus'),
     (r'^qp_api/poll/(?P<document_id>.+)$', quiz_poll_api.Poll, {}, 'Poll'),
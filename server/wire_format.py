@@ -0,0 +1,158 @@
+#!/usr/bin/python2.7
+# Copyright 2011 Google Inc. All Rights Reserved.
+#
+# Licensed under the Apache License, Version 2.0 (the "License');
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS-IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+
+
+
+"""Compact binary encoding of the models served to the Android client.
+
+Format is the same as in BinaryAdapter of the Android client: magic 'QPB' and
+version byte, then fields of the model in fixed order without names.
+
+  int: zigzag varint
+  bool: one byte 0 or 1
+  string: varint reference, 0 is null, reference to the end of the string
+      table + 1 is followed by varint length and UTF-8 bytes of a new string,
+      other references point to strings written before
+  list: varint count + 1, 0 is null list, then items
+
+Clients ask for it by listing CONTENT_TYPE in the Accept header.
+"""
+
+import StringIO
+
+CONTENT_TYPE = 'application/x-quizpoll-binary'
+MAGIC = 'QPB'
+VERSION = 1
+
+
+class Encoder(object):
+  """Writes values with deduplicated strings into a buffer."""
+
+  def __init__(self):
+    self.out = StringIO.StringIO()
+    self.strings = {}
+    self.out.write(MAGIC)
+    self.out.write(chr(VERSION))
+
+  def Varint(self, value):
+    while value > 0x7f:
+      self.out.write(chr((value & 0x7f) | 0x80))
+      value >>= 7
+    self.out.write(chr(value))
+
+  def Int(self, value):
+    value = int(value)
+    self.Varint(((value << 1) ^ (value >> 31)) & 0xffffffff)
+
+  def Bool(self, value):
+    self.out.write('\x01' if value else '\x00')
+
+  def String(self, value):
+    if value is None:
+      self.Varint(0)
+      return
+    if isinstance(value, unicode):
+      value = value.encode('UTF-8')
+    reference = self.strings.get(value)
+    if reference is not None:
+      self.Varint(reference)
+      return
+    reference = len(self.strings) + 1
+    self.strings[value] = reference
+    self.Varint(reference)
+    self.Varint(len(value))
+    self.out.write(value)
+
+  def List(self, items, item_encoder):
+    if items is None:
+      self.Varint(0)
+      return
+    self.Varint(len(items) + 1)
+    for item in items:
+      item_encoder(self, item)
+
+  def Content(self):
+    return self.out.getvalue()
+
+
+def _Answer(encoder, answer):
+  encoder.String(answer.get('answer_text'))
+  encoder.Bool(answer.get('correct', False))
+  encoder.Int(answer.get('number', 0))
+
+
+def _Question(encoder, question):
+  encoder.String(question.get('question_text'))
+  encoder.List(question.get('answers'), _Answer)
+  encoder.Int(question.get('number', 0))
+  encoder.Bool(question.get('anonymous', False))
+
+
+def _Quiz(encoder, quiz):
+  encoder.String(quiz.get('title'))
+  encoder.String(quiz.get('description'))
+  encoder.String(quiz.get('image'))
+  encoder.String(quiz.get('leaderboard_sheet'))
+  encoder.String(quiz.get('statistics_sheet'))
+  encoder.String(quiz.get('document_id'))
+  encoder.Int(quiz.get('score', 0))
+  encoder.List(quiz.get('questions'), _Question)
+
+
+def _Poll(encoder, poll):
+  encoder.String(poll.get('title'))
+  encoder.String(poll.get('internal_data_sheet'))
+  encoder.String(poll.get('responses_sheet'))
+  encoder.String(poll.get('document_id'))
+  encoder.List(poll.get('questions'), _Question)
+
+
+def _LeaderboardEntry(encoder, entry):
+  # Spreadsheet stores score as a string
+  encoder.Int(entry.get('score') or 0)
+  encoder.String(entry.get('ldap'))
+
+
+def _DocsEntry(encoder, entry):
+  encoder.Int(entry.get('type', 0))
+  encoder.String(entry.get('title'))
+  encoder.String(entry.get('id'))
+
+
+def _Encode(value_encoder, value):
+  encoder = Encoder()
+  value_encoder(encoder, value)
+  return encoder.Content()
+
+
+def EncodeQuiz(quiz):
+  return _Encode(_Quiz, quiz)
+
+
+def EncodePoll(poll):
+  return _Encode(_Poll, poll)
+
+
+def EncodeLeaderboard(entries):
+  return _Encode(lambda e, v: e.List(v, _LeaderboardEntry), entries)
+
+
+def EncodeDocuments(entries):
+  return _Encode(lambda e, v: e.List(v, _DocsEntry), entries)
+
+
+def Accepts(request):
+  """Whether the client accepts binary encoding."""
+  return CONTENT_TYPE in request.META.get('HTTP_ACCEPT', '')
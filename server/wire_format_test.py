@@ -0,0 +1,153 @@
+#!/usr/bin/python2.7
+# Copyright 2011 Google Inc. All Rights Reserved.
+#
+# Licensed under the Apache License, Version 2.0 (the "License');
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS-IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+
+
+"""Tests of the binary wire format against golden files.
+
+The same golden files are decoded and encoded again by BinaryModelAdaptersTest
+of the Android tests, so the server and the client agree on the format. Models
+below must match the values asserted there.
+
+Run with --regenerate to write the golden files after intended change of the
+format, the Android test has to be updated too.
+"""
+
+import os
+import sys
+import unittest
+
+import wire_format
+
+GOLDEN_DIR = os.path.join(os.path.dirname(os.path.abspath(__file__)),
+                          os.pardir, 'android_app', 'tests', 'assets',
+                          'wire_format')
+
+# Repeated strings, null values, unicode and negative numbers cover all
+# branches of the encoder
+QUIZ = {
+    'title': u'Capitals \u010cesko',
+    'description': None,
+    'image': 'http://example.com/map.png',
+    'leaderboard_sheet': 'od6',
+    'statistics_sheet': 'od7',
+    'document_id': 'doc-quiz',
+    'score': -150,
+    'questions': [
+        {
+            'question_text': u'Hlavn\xe9 mesto?',
+            'answers': [
+                {'answer_text': 'Prague', 'correct': True, 'number': 0},
+                {'answer_text': 'Brno', 'correct': False, 'number': 1},
+            ],
+            'number': 3,
+        },
+        {
+            'question_text': 'Pick all',
+            'answers': [
+                {'answer_text': 'Brno', 'correct': True, 'number': 0},
+                {'answer_text': None, 'correct': True, 'number': 63},
+            ],
+            'number': 300,
+            'anonymous': True,
+        },
+    ],
+}
+
+POLL = {
+    'title': 'Lecture 1',
+    'internal_data_sheet': 'od6',
+    'responses_sheet': 'od7',
+    'document_id': 'doc-poll',
+    'questions': [
+        {
+            'question_text': 'Ready?',
+            'answers': [],
+            'number': 0,
+            'anonymous': True,
+        },
+    ],
+}
+
+# Spreadsheet returns scores as strings
+LEADERBOARD = [
+    {'score': '1200', 'ldap': 'alice'},
+    {'score': '', 'ldap': 'bob'},
+    {'score': '-5', 'ldap': None},
+]
+
+DOCUMENTS = [
+    {'type': 0, 'title': 'Collection', 'id': 'col-1'},
+    {'type': 1, 'title': 'Collection', 'id': 'doc-quiz'},
+]
+
+GOLDEN = [
+    ('quiz.bin', wire_format.EncodeQuiz, QUIZ),
+    ('poll.bin', wire_format.EncodePoll, POLL),
+    ('leaderboard.bin', wire_format.EncodeLeaderboard, LEADERBOARD),
+    ('documents.bin', wire_format.EncodeDocuments, DOCUMENTS),
+]
+
+
+def _ReadGolden(name):
+  golden = open(os.path.join(GOLDEN_DIR, name), 'rb')
+  try:
+    return golden.read()
+  finally:
+    golden.close()
+
+
+class WireFormatTest(unittest.TestCase):
+
+  def testGoldenFiles(self):
+    for name, encode, model in GOLDEN:
+      self.assertEqual(_ReadGolden(name), encode(model), name)
+
+  def testHeader(self):
+    content = wire_format.EncodeDocuments([])
+    self.assertEqual(wire_format.MAGIC + chr(wire_format.VERSION), content[:4])
+
+  def testNullAndEmptyList(self):
+    self.assertEqual('\x00', wire_format.EncodeDocuments(None)[4:])
+    self.assertEqual('\x01', wire_format.EncodeDocuments([])[4:])
+
+  def testZigzagInt(self):
+    for value, expected in [(0, '\x00'), (-1, '\x01'), (1, '\x02'),
+                            (-150, '\xab\x02'), (300, '\xd8\x04')]:
+      encoder = wire_format.Encoder()
+      encoder.Int(value)
+      self.assertEqual(expected, encoder.Content()[4:], value)
+
+  def testRepeatedStringIsReference(self):
+    encoder = wire_format.Encoder()
+    encoder.String('od6')
+    encoder.String(None)
+    encoder.String('od6')
+    self.assertEqual('\x01\x03od6\x00\x01', encoder.Content()[4:])
+
+
+def _Regenerate():
+  for name, encode, model in GOLDEN:
+    golden = open(os.path.join(GOLDEN_DIR, name), 'wb')
+    try:
+      golden.write(encode(model))
+    finally:
+      golden.close()
+
+
+if __name__ == '__main__':
+  if '--regenerate' in sys.argv:
+    _Regenerate()
+  else:
+    unittest.main()